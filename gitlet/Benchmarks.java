@@ -0,0 +1,902 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/** A debugging class whose main program runs micro-benchmarks of Gitlet's internals:
+ *      java gitlet.Benchmarks NAME...
+ *  where each NAME is one of the benchmarks below. With no NAME, all of them are run.
+ *  Benchmarks work on synthetic data held in memory or in a temporary directory,
+ *  and never touch the .gitlet folder of the current directory.
+ *
+ *      mergebase   Split point search over long synthetic histories, comparing the
+ *                  generation number search in MergeBase with a level order search
+ *                  over both branches.
+ *      codecs      Compression and decompression throughput and compressed size of
+ *                  each Codec of the Object Store, on text and on random bytes.
+ *      formats     Size and encoding and decoding time of Commits, the Staging Area and
+ *                  Branch Control, comparing Java serialization with Format.
+ *      treediff    Finding the files that differ between two and three versions of large
+ *                  trees with a few changed files, comparing TreeDiff over Trees with a
+ *                  comparison of the whole filename to blob maps, as merge used to do.
+ *      linemerge   Merging two versions of text files of 1 to 16 MB, each with edits to lines of
+ *                  their own, with LineMerge, and the time merge used to take to write the whole
+ *                  file in conflict instead.
+ *      commitindex Looking up abbreviated commit IDs among 10,000 to 1,000,000 commits, with the
+ *                  binary search of CommitIndex, and by sorting and scanning the list of all IDs
+ *                  as listing the Commits folder did.
+ *      findindex   Finding commits by a word of their messages among 10,000 to 1,000,000 commits,
+ *                  with the trigram index of MessageIndex, and by checking every message.
+ *      log         Writing the global-log of 100,000 commits to a file, as usual, with --oneline
+ *                  and with a format, with LogWriter, and with the println and String.format
+ *                  calls per commit log used to make.
+ *      changedpaths Testing the changed path Bloom filters of ChangedPaths of 100,000 synthetic
+ *                  commits for paths they did not change, to find their false positive rate, and
+ *                  their size and the time taken per commit.
+ *      checkout    Throughput of checking out a synthetic commit of 100,000 files into an
+ *                  empty working directory, with the Materializer on 1 to 8 threads.
+ *                  Runs gitlet.Main in a temporary directory, and takes a few minutes.
+ *      daemon      Time taken by a few commands on a history of 500 commits, run directly by
+ *                  gitlet.Main, through gitlet.Client and the daemon, and sent to the daemon from
+ *                  this JVM, as a client that starts no JVM would. Runs gitlet.Main in a temporary
+ *                  directory.
+ */
+public class Benchmarks {
+
+    public static void main(String... names) {
+        if (names.length == 0) {
+            names = new String[] {"mergebase", "codecs", "formats", "treediff", "linemerge", "commitindex",
+                    "findindex", "log", "changedpaths", "checkout", "daemon"};
+        }
+        for (String name : names) {
+            switch (name) {
+                case "mergebase":
+                    mergebase();
+                    break;
+                case "codecs":
+                    codecs();
+                    break;
+                case "formats":
+                    formats();
+                    break;
+                case "treediff":
+                    treediff();
+                    break;
+                case "linemerge":
+                    linemerge();
+                    break;
+                case "commitindex":
+                    commitindex();
+                    break;
+                case "findindex":
+                    findindex();
+                    break;
+                case "log":
+                    log();
+                    break;
+                case "changedpaths":
+                    changedpaths();
+                    break;
+                case "checkout":
+                    checkout();
+                    break;
+                case "daemon":
+                    daemon();
+                    break;
+                default:
+                    System.out.println("No benchmark with that name exists: " + name);
+            }
+        }
+    }
+
+    /** Runs TASK repeatedly for a while so that the JIT has compiled it, then runs it as many times again
+     *  and returns the average time of one run in microseconds. */
+    private static double time(Runnable task) {
+        long warm_up_end = System.nanoTime() + 300_000_000L;
+        int runs = 0;
+        while (System.nanoTime() < warm_up_end) {
+            task.run();
+            runs += 1;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1000.0 / runs;
+    }
+
+    /* MERGE BASE */
+
+    /** Builds a synthetic history of HISTORY linear commits with a merge every 50 commits,
+     *  then two branches on top of it, and times finding their split point. */
+    private static void mergebase() {
+        System.out.println("=== mergebase ===");
+        System.out.println(String.format("%10s %10s %14s %14s", "history", "divergence", "level order us", "MergeBase us"));
+        for (int history : new int[] {1000, 10000, 100000}) {
+            for (int[] divergence : new int[][] {{1, 1}, {10, 10}, {100, 100}, {1, 1000}}) {
+                CommitGraph graph = new CommitGraph();
+                int split = synthetic_history(graph, history);
+                int first = branch(graph, split, divergence[0]);
+                int second = branch(graph, split, divergence[1]);
+
+                if (MergeBase.find(graph, first, second) != split || level_order(graph, first, second) != split) {
+                    throw new IllegalStateException("wrong split point");
+                }
+                double bfs = time(() -> level_order(graph, first, second));
+                double generation = time(() -> MergeBase.find(graph, first, second));
+                System.out.println(String.format("%10d %10s %14.1f %14.1f", history, divergence[0] + "/" + divergence[1], bfs, generation));
+            }
+        }
+        System.out.println();
+    }
+
+    /** Adds LENGTH commits to GRAPH, where every 50th commit merges in a short side branch.
+     *  Returns the index of the last commit. */
+    private static int synthetic_history(CommitGraph graph, int length) {
+        int head = commit(graph, CommitGraph.NONE, CommitGraph.NONE);
+        for (int i = 1; i < length; i++) {
+            if (i % 50 == 0) {
+                int side = branch(graph, graph.parents[head] == CommitGraph.NONE ? head : graph.parents[head], 3);
+                head = commit(graph, head, side);
+            } else {
+                head = commit(graph, head, CommitGraph.NONE);
+            }
+        }
+        return head;
+    }
+
+    /** Adds LENGTH commits to GRAPH on top of FROM, returning the index of the last one. */
+    private static int branch(CommitGraph graph, int from, int length) {
+        int head = from;
+        for (int i = 0; i < length; i++) {
+            head = commit(graph, head, CommitGraph.NONE);
+        }
+        return head;
+    }
+
+    private static int commit(CommitGraph graph, int parent, int second_parent) {
+        int generation = 1 + Math.max(parent == CommitGraph.NONE ? 0 : graph.generations[parent],
+                second_parent == CommitGraph.NONE ? 0 : graph.generations[second_parent]);
+        String id = Utils.sha1(Integer.toString(graph.size));
+        return graph.put(id, parent, second_parent, graph.size, generation, "");
+    }
+
+    /** The split point search Gitlet used before MergeBase: a level order search from both heads
+     *  at once, with visited commits kept in sets of commit IDs. */
+    private static int level_order(CommitGraph graph, int first, int second) {
+        Queue<String> first_fringe = new LinkedList<>();
+        Queue<String> second_fringe = new LinkedList<>();
+        HashSet<String> marked_first = new HashSet<>();
+        HashSet<String> marked_second = new HashSet<>();
+        first_fringe.add(graph.ids[first]);
+        second_fringe.add(graph.ids[second]);
+        marked_first.add(graph.ids[first]);
+        marked_second.add(graph.ids[second]);
+
+        while (!first_fringe.isEmpty() || !second_fringe.isEmpty()) {
+            if (!first_fringe.isEmpty()) {
+                int commit = graph.index_of(first_fringe.remove());
+                for (int parent : new int[] {graph.parents[commit], graph.second_parents[commit]}) {
+                    if (parent != CommitGraph.NONE) {
+                        marked_first.add(graph.ids[parent]);
+                        first_fringe.add(graph.ids[parent]);
+                    }
+                }
+                if (marked_second.contains(graph.ids[commit])) {
+                    return commit;
+                }
+            }
+            if (!second_fringe.isEmpty()) {
+                int commit = graph.index_of(second_fringe.remove());
+                for (int parent : new int[] {graph.parents[commit], graph.second_parents[commit]}) {
+                    if (parent != CommitGraph.NONE) {
+                        marked_second.add(graph.ids[parent]);
+                        second_fringe.add(graph.ids[parent]);
+                    }
+                }
+                if (marked_first.contains(graph.ids[commit])) {
+                    return commit;
+                }
+            }
+        }
+        return CommitGraph.NONE;
+    }
+
+    /* CODECS */
+
+    /** Compresses and decompresses 16 MB of source-code-like text and 16 MB of random bytes with every codec. */
+    private static void codecs() {
+        System.out.println("=== codecs ===");
+        System.out.println(String.format("%-8s %-8s %12s %14s %16s", "data", "codec", "size %", "compress MB/s", "decompress MB/s"));
+        Random random = new Random(61);
+        byte[] binary = new byte[16 << 20];
+        random.nextBytes(binary);
+        LinkedHashMap<String, byte[]> inputs = new LinkedHashMap<>();
+        inputs.put("text", synthetic_text(random, 16 << 20));
+        inputs.put("binary", binary);
+        for (Map.Entry<String, byte[]> data : inputs.entrySet()) {
+            byte[] raw = data.getValue();
+            for (Codec codec : Codec.values()) {
+                byte[][] compressed = new byte[1][];
+                double compress = time(() -> compressed[0] = compress(codec, raw));
+                double decompress = time(() -> decompress(codec, compressed[0]));
+                if (!Arrays.equals(decompress(codec, compressed[0]), raw)) {
+                    throw new IllegalStateException(codec.name + " did not round trip");
+                }
+                System.out.println(String.format("%-8s %-8s %12.1f %14.1f %16.1f", data.getKey(), codec.name,
+                        100.0 * compressed[0].length / raw.length, raw.length / compress, raw.length / decompress));
+            }
+        }
+        System.out.println();
+    }
+
+    /** Returns about LENGTH bytes of text made of lines that look like source code. */
+    private static byte[] synthetic_text(Random random, int length) {
+        String[] words = {"public", "static", "void", "String", "return", "if", "else", "for", "int", "commit",
+            "blob", "file", "name", "=", "==", "+=", "(", ")", "{", "}", ";", "new", "null", "true", "false"};
+        StringBuilder text = new StringBuilder(length + 200);
+        while (text.length() < length) {
+            text.append("    ".repeat(random.nextInt(4)));
+            for (int i = random.nextInt(10); i >= 0; i--) {
+                text.append(words[random.nextInt(words.length)]).append(random.nextInt(8) == 0 ? random.nextInt(1000) : "").append(' ');
+            }
+            text.append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(Codec codec, byte[] raw) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(raw.length / 2);
+        try (OutputStream out = codec.compress(bytes)) {
+            out.write(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(Codec codec, byte[] compressed) {
+        try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* FORMATS */
+
+    /** Encodes and decodes commits of 10 to 10,000 files, a Staging Area and a Branch Control object,
+     *  both with Java serialization (Utils.serialize) and with their Format encoding. */
+    private static void formats() {
+        System.out.println("=== formats ===");
+        System.out.println(String.format("%-16s %10s %10s %12s %12s %12s %12s", "object", "java B", "format B",
+                "java enc us", "format enc us", "java dec us", "format dec us"));
+        for (int files : new int[] {10, 100, 1000, 10000}) {
+            Commit commit = synthetic_commit(files);
+            format("commit " + files, commit, commit::encode, Commit::decode);
+        }
+        StagingArea SA = new StagingArea();
+        for (int i = 0; i < 100; i++) {
+            String name = synthetic_path(i);
+            SA.Add.put(name, new Blob(name, new Blob.Header(Utils.sha1(name), 1000 + i)));
+            SA.Remove.add(synthetic_path(i + 100));
+        }
+        format("staging area", SA, SA::encode, StagingArea::decode);
+        Branch_Control branches = new Branch_Control("master");
+        for (int i = 0; i < 10; i++) {
+            branches.add_branch("feature-" + i);
+        }
+        format("branch control", branches, branches::encode, Branch_Control::decode);
+        System.out.println();
+    }
+
+    /** Prints the sizes and times for one OBJECT, encoded by ENCODE and decoded by DECODE. */
+    private static void format(String name, Serializable object, Supplier<byte[]> encode, Function<byte[], ?> decode) {
+        byte[] serialized = Utils.serialize(object);
+        byte[] encoded = encode.get();
+        double java_encode = time(() -> Utils.serialize(object));
+        double format_encode = time(encode::get);
+        double java_decode = time(() -> deserialize(serialized));
+        double format_decode = time(() -> decode.apply(encoded));
+        System.out.println(String.format("%-16s %10d %10d %12.1f %12.1f %12.1f %12.1f", name, serialized.length,
+                encoded.length, java_encode, format_encode, java_decode, format_decode));
+    }
+
+    /** Returns a commit of FILES files with headers, like one made by add and commit. */
+    private static Commit synthetic_commit(int files) {
+        Commit commit = new Commit("benchmark commit with a message of ordinary length", new Date(1_600_000_000_000L));
+        for (int i = 0; i < files; i++) {
+            String name = synthetic_path(i);
+            String blobID = Utils.sha1(name);
+            commit.files().put(name, blobID);
+            commit.headers().put(name, new Blob.Header(blobID, 1000 + i));
+        }
+        return commit;
+    }
+
+    private static String synthetic_path(int i) {
+        return "src/main/java/module" + i / 100 + "/package" + i / 10 % 10 + "/File" + i + ".java";
+    }
+
+    private static Object deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* TREE DIFF */
+
+    /** Builds trees of 10,000 to 1,000,000 files in memory, with 10 files changed on each of two branches, and
+     *  times finding the changed files, and the files a merge must look at, by walking the trees and by
+     *  comparing the flat maps of all files. */
+    private static void treediff() {
+        System.out.println("=== treediff ===");
+        System.out.println(String.format("%10s %8s %12s %12s %12s %12s", "files", "changed", "flat diff us",
+                "tree diff us", "flat merge us", "tree merge us"));
+        for (int files : new int[] {10_000, 100_000, 1_000_000}) {
+            TreeMap<String, Blob.Header> base = new TreeMap<>();
+            for (int i = 0; i < files; i++) {
+                String name = synthetic_path(i);
+                base.put(name, new Blob.Header(Utils.sha1(name), 1000 + i));
+            }
+            Random random = new Random(71);
+            TreeMap<String, Blob.Header> ours = changed(base, random, 10);
+            TreeMap<String, Blob.Header> theirs = changed(base, random, 10);
+            HashMap<String, Tree> trees = new HashMap<>();
+            String baseID = Tree.build(base, trees);
+            String oursID = Tree.build(ours, trees);
+            String theirsID = Tree.build(theirs, trees);
+            TreeDiff diff = new TreeDiff(trees);
+
+            int changed = diff.diff(baseID, oursID).size();
+            if (changed != flat_diff(base, ours) || diff.diff3(baseID, oursID, theirsID).size() != flat_merge(base, ours, theirs)) {
+                throw new IllegalStateException("tree and flat diffs disagree");
+            }
+            double flat = time(() -> flat_diff(base, ours));
+            double tree = time(() -> diff.diff(baseID, oursID));
+            double flat3 = time(() -> flat_merge(base, ours, theirs));
+            double tree3 = time(() -> diff.diff3(baseID, oursID, theirsID));
+            System.out.println(String.format("%10d %8d %12.1f %12.1f %12.1f %12.1f", files, changed, flat, tree, flat3, tree3));
+        }
+        System.out.println();
+    }
+
+    /** Returns a copy of FILES with COUNT files, chosen with RANDOM, given new contents. */
+    private static TreeMap<String, Blob.Header> changed(TreeMap<String, Blob.Header> files, Random random, int count) {
+        TreeMap<String, Blob.Header> copy = new TreeMap<>(files);
+        for (int i = 0; i < count; i++) {
+            String name = synthetic_path(random.nextInt(files.size()));
+            copy.put(name, new Blob.Header(Utils.sha1(name, "changed" + i), 1));
+        }
+        return copy;
+    }
+
+    /** Returns the number of files that differ between BEFORE and AFTER, comparing every file. */
+    private static int flat_diff(Map<String, Blob.Header> before, Map<String, Blob.Header> after) {
+        int changed = 0;
+        for (Map.Entry<String, Blob.Header> file : before.entrySet()) {
+            if (!TreeDiff.same(file.getValue(), after.get(file.getKey()))) {
+                changed += 1;
+            }
+        }
+        for (String name : after.keySet()) {
+            if (!before.containsKey(name)) {
+                changed += 1;
+            }
+        }
+        return changed;
+    }
+
+    /** Returns the number of files a merge of THEIRS into OURS must look at, comparing every file. */
+    private static int flat_merge(Map<String, Blob.Header> base, Map<String, Blob.Header> ours, Map<String, Blob.Header> theirs) {
+        TreeSet<String> names = new TreeSet<>(base.keySet());
+        names.addAll(ours.keySet());
+        names.addAll(theirs.keySet());
+        int merged = 0;
+        for (String name : names) {
+            if (!TreeDiff.same(ours.get(name), theirs.get(name)) && !TreeDiff.same(base.get(name), theirs.get(name))) {
+                merged += 1;
+            }
+        }
+        return merged;
+    }
+
+    /* LINE MERGE */
+
+    /** Builds text files of 1, 4 and 16 MB of 40 byte lines, and two versions of each with EDITS lines changed,
+     *  ours in the first half of the file and theirs in the second, then with the same lines changed in both.
+     *  Times merging them with LineMerge, and writing them as one conflict as merge used to. */
+    private static void linemerge() {
+        System.out.println("=== linemerge ===");
+        System.out.println(String.format("%6s %9s %7s %10s %16s %14s %8s %10s", "MB", "lines", "edits", "overlap",
+                "whole file us", "LineMerge us", "MB/s", "conflicts"));
+        final int edits = 100;
+        for (int megabytes : new int[] {1, 4, 16}) {
+            int lines = megabytes * 1_000_000 / 40;
+            byte[] base = text(lines, -1, 0, 0);
+            for (boolean overlap : new boolean[] {false, true}) {
+                byte[] ours = text(lines, 0, 0, edits);
+                byte[] theirs = text(lines, 1, overlap ? 0 : lines / 2, edits);
+                int[] conflicts = new int[1];
+                double whole = time(() -> whole_file_conflict(ours, theirs));
+                double merged = time(() -> {
+                    try {
+                        conflicts[0] = LineMerge.merge(base, ours, theirs, OutputStream.nullOutputStream());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                System.out.println(String.format("%6d %9d %7d %10s %16.0f %14.0f %8.1f %10d", megabytes, lines,
+                        2 * edits, overlap, whole, merged, base.length / merged, conflicts[0]));
+            }
+        }
+        System.out.println();
+    }
+
+    /** Returns LINES lines of 40 bytes. If VERSION is not -1, EDITS lines spread evenly from line FROM to the end
+     *  of the file, or over the first half if FROM is 0, are changed in a way that differs between versions. */
+    private static byte[] text(int lines, int version, int from, int edits) {
+        int span = from == 0 ? lines / 2 : lines - from;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(lines * 40);
+        for (int i = 0; i < lines; i++) {
+            boolean edited = version != -1 && i >= from && i < from + span && (i - from) % (span / edits) == 0;
+            String line = edited ? String.format("%-8s line %-25d\n", "version" + version, i)
+                                 : String.format("setting.%-10d = value %-13d\n", i, i * 7);
+            out.writeBytes(line.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the whole of OURS and THEIRS in one conflict, decoding and encoding them as merge used to. */
+    private static byte[] whole_file_conflict(byte[] ours, byte[] theirs) {
+        String contents = "<<<<<<< HEAD\n" + new String(ours, StandardCharsets.UTF_8) + "=======\n"
+                + new String(theirs, StandardCharsets.UTF_8) + ">>>>>>>\n";
+        return contents.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /* COMMIT INDEX */
+
+    /** Writes commit indexes of 10,000 to 1,000,000 random commit IDs to a temporary file, and times finding the
+     *  commit named by an 8 digit prefix with CommitIndex, and by sorting and scanning all IDs. */
+    private static void commitindex() {
+        System.out.println("=== commitindex ===");
+        System.out.println(String.format("%10s %14s %14s %10s", "commits", "list scan us", "index us", "index KB"));
+        try {
+            File file = File.createTempFile("index", ".bench");
+            Random random = new Random(20);
+            for (int commits : new int[] {10_000, 100_000, 1_000_000}) {
+                ArrayList<String> ids = new ArrayList<>(commits);
+                for (int i = 0; i < commits; i++) {
+                    ids.add(Utils.sha1(Long.toString(random.nextLong())));
+                }
+                CommitIndex.write(file, ids);
+                CommitIndex index = CommitIndex.load(file);
+                String[] prefixes = new String[64];
+                for (int i = 0; i < prefixes.length; i++) {
+                    prefixes[i] = ids.get(random.nextInt(commits)).substring(0, 8);
+                }
+                int[] next = new int[1];
+                double scan = time(() -> list_scan(ids, prefixes[next[0]++ % prefixes.length]));
+                double binary = time(() -> index.find(prefixes[next[0]++ % prefixes.length], 2));
+                System.out.println(String.format("%10d %14.1f %14.2f %10d", commits, scan, binary, file.length() / 1024));
+            }
+            file.delete();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.println();
+    }
+
+    /** Returns the IDs starting with PREFIX, sorting and scanning the list of all IDS as listing a folder does. */
+    private static List<String> list_scan(List<String> ids, String prefix) {
+        ArrayList<String> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        ArrayList<String> found = new ArrayList<>();
+        for (String id : sorted) {
+            if (id.startsWith(prefix)) {
+                found.add(id);
+            }
+        }
+        return found;
+    }
+
+    /* FIND INDEX */
+
+    /** Writes message indexes of 10,000 to 1,000,000 synthetic commit messages to a temporary file, and times
+     *  finding the commits whose messages contain a piece of text, and those matching a regular expression,
+     *  with MessageIndex, and by checking every message, as find does without the index. */
+    private static void findindex() {
+        System.out.println("=== findindex ===");
+        System.out.println(String.format("%10s %10s %14s %14s %10s %10s", "commits", "query", "scan us", "index us",
+                "checked", "index KB"));
+        String[] words = {"fix", "add", "update", "remove", "merge", "parser", "tests", "docs", "build", "cache"};
+        try {
+            File file = File.createTempFile("index", ".bench");
+            Random random = new Random(21);
+            for (int commits : new int[] {10_000, 100_000, 1_000_000}) {
+                ArrayList<String> ids = new ArrayList<>(commits);
+                ArrayList<String> messages = new ArrayList<>(commits);
+                for (int i = 0; i < commits; i++) {
+                    ids.add(Utils.sha1(Long.toString(random.nextLong())));
+                    messages.add(words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                            + " for issue " + random.nextInt(commits));
+                }
+                MessageIndex.write(file, ids, messages);
+                MessageIndex index = MessageIndex.load(file);
+                String text = "parser for issue " + random.nextInt(commits / 10);
+                String regex = "^fix .* issue 1234\\d$";
+                Pattern pattern = Pattern.compile(regex);
+                List<String> literals = MessageIndex.literals(regex);
+                double scan = time(() -> message_scan(ids, messages, message -> message.contains(text)));
+                double indexed = time(() -> index.find(List.of(text), message -> message.contains(text)));
+                System.out.println(String.format("%10d %10s %14.1f %14.2f %10d %10d", commits, "substring", scan,
+                        indexed, index.checked, file.length() / 1024));
+                scan = time(() -> message_scan(ids, messages, message -> pattern.matcher(message).find()));
+                indexed = time(() -> index.find(literals, message -> pattern.matcher(message).find()));
+                System.out.println(String.format("%10d %10s %14.1f %14.2f %10d %10d", commits, "regex", scan,
+                        indexed, index.checked, file.length() / 1024));
+            }
+            file.delete();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.println();
+    }
+
+    /** Returns the IDs of the commits whose MESSAGES match, checking every one. */
+    private static List<String> message_scan(List<String> ids, List<String> messages,
+                                             Predicate<String> matches) {
+        ArrayList<String> found = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            if (matches.test(messages.get(i))) {
+                found.add(ids.get(i));
+            }
+        }
+        return found;
+    }
+
+    /* LOG */
+
+    /** Number of commits in the synthetic history written by the log benchmark. */
+    private static final int LOG_COMMITS = 100_000;
+
+    /** Writes the global-log of a synthetic history of LOG_COMMITS commits, one every few minutes, some of them
+     *  merges, to a temporary file, with LogWriter and as log used to, with a println per line to a stream flushed
+     *  at each line as standard output is. */
+    private static void log() {
+        System.out.println("=== log ===");
+        System.out.println(String.format("%14s %14s %14s %10s", "format", "println ms", "LogWriter ms", "lines/s"));
+        CommitGraph graph = new CommitGraph();
+        Random random = new Random(22);
+        long timestamp = 1_600_000_000_000L;
+        for (int i = 0; i < LOG_COMMITS; i++) {
+            timestamp += random.nextInt(600_000);
+            int second_parent = i > 10 && random.nextInt(10) == 0 ? i - 1 - random.nextInt(10) : CommitGraph.NONE;
+            graph.put(Utils.sha1(Integer.toString(i)), i - 1, second_parent, timestamp, 1, "change " + i
+                    + " of the parser");
+        }
+        try {
+            File file = File.createTempFile("log", ".bench");
+            try (PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(file), 128), true)) {
+                double old = time(() -> println_log(graph, out)) / 1000;
+                for (String format : new String[] {null, LogWriter.ONELINE, "%H %p %ad%n%B"}) {
+                    ByteArrayOutputStream log = new ByteArrayOutputStream();
+                    write_log(graph, format, log);
+                    long lines = log.toString(StandardCharsets.UTF_8).lines().count();
+                    double written;
+                    try (FileOutputStream file_out = new FileOutputStream(file)) {
+                        written = time(() -> write_log(graph, format, file_out)) / 1000;
+                    }
+                    System.out.println(String.format("%14s %14s %14.1f %10.0f", format == null ? "usual" : format,
+                            format == null ? String.format("%.1f", old) : "", written, lines / written * 1000));
+                }
+            }
+            file.delete();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.println();
+    }
+
+    /** Writes the global-log of GRAPH in FORMAT to OUT with LogWriter. */
+    private static void write_log(CommitGraph graph, String format, OutputStream out) {
+        LogWriter writer = new LogWriter(out, format, -1);
+        try {
+            for (int i = 0; i < graph.size; i++) {
+                writer.write(graph, i);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Writes the global-log of GRAPH to OUT as log used to, line by line. */
+    private static void println_log(CommitGraph graph, PrintStream out) {
+        for (int i = 0; i < graph.size; i++) {
+            out.println("===");
+            out.println("commit " + graph.ids[i]);
+            if (graph.second_parents[i] != CommitGraph.NONE) {
+                out.println(String.format("Merge: %7.7s %7.7s", graph.ids[graph.parents[i]],
+                        graph.ids[graph.second_parents[i]]));
+            }
+            out.println(String.format("Date: %1$ta %1$tb %1$td %1$tT %1$tY %1$tz", new Date(graph.timestamps[i])));
+            out.println(graph.messages[i]);
+            out.println("");
+        }
+    }
+
+    /* CHANGED PATHS */
+
+    /** Builds the changed path filters of 100,000 commits, each changing 1 to MAX files among 10,000 files in 100
+     *  directories, and tests every filter for files and directories, counting the filters that wrongly seem to hold
+     *  a path the commit did not change. */
+    private static void changedpaths() {
+        System.out.println("=== changedpaths ===");
+        System.out.println(String.format("%10s %10s %12s %14s %14s", "max files", "commits", "bytes/commit",
+                "false pos %", "ns per test"));
+        Random random = new Random(24);
+        for (int max_files : new int[] {1, 10, 100}) {
+            int commits = 100_000;
+            ArrayList<Set<String>> changed = new ArrayList<>(commits);
+            ArrayList<byte[]> filters = new ArrayList<>(commits);
+            long filter_bytes = 0;
+            for (int c = 0; c < commits; c++) {
+                HashSet<String> paths = new HashSet<>();
+                int files = 1 + random.nextInt(max_files);
+                for (int f = 0; f < files; f++) {
+                    String directory = "d" + random.nextInt(100);
+                    paths.add(directory);
+                    paths.add(directory + "/f" + random.nextInt(100) + ".txt");
+                }
+                byte[] filter = ChangedPaths.filter(paths);
+                changed.add(paths);
+                filters.add(filter);
+                filter_bytes += filter.length;
+            }
+            String[] queries = new String[64];
+            long[] hashes = new long[queries.length];
+            for (int q = 0; q < queries.length; q++) {
+                queries[q] = q % 8 == 0 ? "d" + random.nextInt(100) : "d" + random.nextInt(100) + "/f"
+                        + random.nextInt(100) + ".txt";
+                hashes[q] = ChangedPaths.hash(queries[q]);
+            }
+            long negatives = 0;
+            long false_positives = 0;
+            for (int q = 0; q < queries.length; q++) {
+                for (int c = 0; c < commits; c++) {
+                    if (!changed.get(c).contains(queries[q])) {
+                        negatives += 1;
+                        byte[] filter = filters.get(c);
+                        if (ChangedPaths.may_contain(filter, 0, filter.length, hashes[q])) {
+                            false_positives += 1;
+                        }
+                    }
+                }
+            }
+            int[] next = new int[1];
+            double test = time(() -> {
+                long hash = hashes[next[0]++ % hashes.length];
+                for (byte[] filter : filters) {
+                    ChangedPaths.may_contain(filter, 0, filter.length, hash);
+                }
+            });
+            System.out.println(String.format("%10d %10d %12.1f %14.3f %14.1f", max_files, commits,
+                    (double) filter_bytes / commits, 100.0 * false_positives / negatives, test * 1000 / commits));
+        }
+        System.out.println();
+    }
+
+    /* CHECKOUT */
+
+    /** Number of files in the synthetic commit checked out by the checkout benchmark. */
+    private static final int CHECKOUT_FILES = 100_000;
+
+    /** Commits CHECKOUT_FILES files of about 1 KB, in directories of 100, in a new repository, then checks out the
+     *  empty initial commit and that commit again, timing the second checkout for each number of threads. */
+    private static void checkout() {
+        System.out.println("=== checkout ===");
+        File dir;
+        try {
+            dir = Files.createTempDirectory("gitlet-checkout").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Random random = new Random(67);
+            long bytes = 0;
+            for (int i = 0; i < CHECKOUT_FILES; i++) {
+                File file = Utils.join(dir, String.format("d%04d", i / 100), String.format("f%02d.txt", i % 100));
+                file.getParentFile().mkdirs();
+                byte[] contents = synthetic_text(random, 1000);
+                Utils.writeContents(file, (Object) contents);
+                bytes += contents.length;
+            }
+            gitlet(dir, 0, "init");
+            gitlet(dir, 0, "branch", "empty");
+            gitlet(dir, 0, "add", ".");
+            gitlet(dir, 0, "commit", "synthetic commit");
+
+            System.out.println(String.format("%8s %8s %10s %10s", "threads", "files", "files/s", "MB/s"));
+            for (int threads : new int[] {1, 2, 4, 8}) {
+                gitlet(dir, threads, "checkout", "empty");
+                long start = System.nanoTime();
+                gitlet(dir, threads, "checkout", "master");
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (Utils.join(dir, "d0000").list().length != 100) {
+                    throw new IllegalStateException("checkout did not write every file");
+                }
+                System.out.println(String.format("%8d %8d %10.0f %10.1f", threads, CHECKOUT_FILES,
+                        CHECKOUT_FILES / seconds, bytes / 1e6 / seconds));
+            }
+        } finally {
+            delete_recursively(dir);
+        }
+        System.out.println();
+    }
+
+    /* DAEMON */
+
+    /** Number of commits in the history the daemon benchmark runs commands on, and of files in each. */
+    private static final int DAEMON_COMMITS = 500;
+    private static final int DAEMON_FILES = 100;
+
+    /** Number of times each command is run, after as many runs to warm up the daemon. */
+    private static final int DAEMON_RUNS = 10;
+
+    /** Makes a history of DAEMON_COMMITS commits, each changing one of DAEMON_FILES files, through a daemon, then
+     *  times commands run each way. */
+    private static void daemon() {
+        System.out.println("=== daemon ===");
+        File dir;
+        try {
+            dir = Files.createTempDirectory("gitlet-daemon").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Process daemon = null;
+        try {
+            for (int i = 0; i < DAEMON_FILES; i++) {
+                Utils.writeContents(Utils.join(dir, String.format("f%03d.txt", i)), "version 0\n");
+            }
+            gitlet(dir, 0, "init");
+            daemon = start(dir, "gitlet.Main", "daemon");
+            File socket = Utils.join(dir, ".gitlet", "daemon.sock");
+            long deadline = System.nanoTime() + 30_000_000_000L;
+            while (!socket.exists() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            OutputStream discard = OutputStream.nullOutputStream();
+            request(socket, discard, "add", ".");
+            request(socket, discard, "commit", "files");
+            for (int i = 1; i < DAEMON_COMMITS; i++) {
+                String name = String.format("f%03d.txt", i % DAEMON_FILES);
+                Utils.writeContents(Utils.join(dir, name), "version " + i + "\n");
+                request(socket, discard, "add", name);
+                request(socket, discard, "commit", "commit " + i);
+            }
+
+            System.out.println(String.format("%-26s %12s %12s %12s", "command", "Main (ms)", "Client (ms)",
+                    "request (ms)"));
+            String[][] commands = {{"status"}, {"log", "--oneline", "-n", "20"}, {"log", "--oneline"},
+                    {"log", "--oneline", "--", "f007.txt"}, {"find", "commit 42"}};
+            for (String[] command : commands) {
+                double direct = 0;
+                double client = 0;
+                double in_process = 0;
+                for (int run = -DAEMON_RUNS; run < DAEMON_RUNS; run++) {
+                    long start = System.nanoTime();
+                    gitlet(dir, "gitlet.Main", 0, command);
+                    long direct_end = System.nanoTime();
+                    gitlet(dir, "gitlet.Client", 0, command);
+                    long client_end = System.nanoTime();
+                    request(socket, discard, command);
+                    long request_end = System.nanoTime();
+                    if (run >= 0) {
+                        direct += (direct_end - start) / 1e6 / DAEMON_RUNS;
+                        client += (client_end - direct_end) / 1e6 / DAEMON_RUNS;
+                        in_process += (request_end - client_end) / 1e6 / DAEMON_RUNS;
+                    }
+                }
+                System.out.println(String.format("%-26s %12.1f %12.1f %12.2f", String.join(" ", command), direct,
+                        client, in_process));
+            }
+            gitlet(dir, 0, "daemon", "--stop");
+            daemon.waitFor();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted");
+        } finally {
+            if (daemon != null) {
+                daemon.destroy();
+            }
+            delete_recursively(dir);
+        }
+        System.out.println();
+    }
+
+    /** Sends the command ARGS to the daemon listening on SOCKET, as gitlet.Client does, writing its output to OUT. */
+    private static void request(File socket, OutputStream out, String... args) throws IOException {
+        try (SocketChannel daemon = SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath()))) {
+            if (Client.request(daemon, Arrays.asList(args), out, System.err) != 0) {
+                throw new IllegalStateException("gitlet " + String.join(" ", args) + " failed");
+            }
+        }
+    }
+
+    /** Runs gitlet.Main with ARGS in DIR, on THREADS worker threads unless THREADS is 0, and waits for it. */
+    private static void gitlet(File dir, int threads, String... args) {
+        gitlet(dir, "gitlet.Main", threads, args);
+    }
+
+    /** Runs the main class MAIN_CLASS with ARGS in DIR, on THREADS worker threads unless THREADS is 0, and waits
+     *  for it. */
+    private static void gitlet(File dir, String main_class, int threads, String... args) {
+        ArrayList<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path")));
+        if (threads > 0) {
+            command.add("-Dgitlet.threads=" + threads);
+        }
+        command.add(main_class);
+        command.addAll(Arrays.asList(args));
+        try {
+            Process process = new ProcessBuilder(command).directory(dir)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException("gitlet " + String.join(" ", args) + " failed");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted");
+        }
+    }
+
+    /** Starts the main class MAIN_CLASS with ARGS in DIR, without waiting for it. */
+    private static Process start(File dir, String main_class, String... args) throws IOException {
+        ArrayList<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), main_class));
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command).directory(dir)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    private static void delete_recursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete_recursively(child);
+            }
+        }
+        file.delete();
+    }
+}
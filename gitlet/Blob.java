@@ -1,24 +1,57 @@
 package gitlet;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.Serializable;
 
-import static gitlet.Repository.GITLET_DIR;
-import static gitlet.Utils.*;
-
+/** A Blob is one version of a file that has been added to the Staging Area.
+ *  Its contents are streamed into the Object Store when it is created, so a Blob only holds
+ *  the hash and size of the contents and never the contents themselves. */
 public class Blob implements Serializable {
 
-    public final byte[] contents; // serialised contents of file
+    /** Fixed so that Staging Areas and blobs written by older versions of Gitlet can still be read. */
+    private static final long serialVersionUID = -681625702360562855L;
+
+    public final byte[] contents; // contents of file, only present in blobs written by older versions of Gitlet
     public final String content_compare; // hashed value of contents in blob, and used as a name of blob.
     public final String name; // name of file
+    public final long size; // length of contents in bytes
 
 
     public Blob(File file, String name){
-        this.contents = readContents(file);
-        this.content_compare = sha1(contents);
+        Header header = ObjectStore.put_file(file);
+        this.contents = null;
+        this.content_compare = header.content_compare;
         this.name = name;
+        this.size = header.size;
         }
 
+    /** A blob whose contents are already in the Object Store, with the given hash and size. */
+    public Blob(String name, Header header){
+        this.contents = null;
+        this.content_compare = header.content_compare;
+        this.name = name;
+        this.size = header.size;
+    }
+
+    /** Returns the hash and size of the contents of this blob. */
+    public Header header(){
+        return new Header(content_compare, contents != null ? contents.length : size);
+    }
+
+    /** The hash and size of a blob's contents. Commits keep one Header per file so that a file can be
+     *  compared with its committed version without reading the blob and its contents. */
+    public static class Header implements Serializable {
+
+        /** Fixed so that commits written by older versions of Gitlet can still be read. */
+        private static final long serialVersionUID = -9153509189851743755L;
+
+        public final String content_compare;
+        public final long size;
+
+        public Header(String content_compare, long size) {
+            this.content_compare = content_compare;
+            this.size = size;
+        }
+    }
 
     }
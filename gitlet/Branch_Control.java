@@ -6,11 +6,18 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
 
+import static gitlet.Repository.Branch_Control_file;
+import static gitlet.Utils.*;
+
 
 /** The Branch Control object keeps track of 2 things:
  *      1. The active branch, aka the branch of the HEAD commit.
  *      2. All of the branches that exists in gitlet. All branches are stored in branchname storage.*/
 public class Branch_Control implements Serializable {
+
+    /** Fixed so that Branch Control files written by older versions of Gitlet can still be read. */
+    private static final long serialVersionUID = -3845521770231781663L;
+
     public ArrayList<String> branchname_storage = new ArrayList<>();
     public String active_branch;     //why is it a good habit to write code that gives public function to manipulate private attributes? why not just public attributes directly accessible?
 
@@ -20,6 +27,42 @@ public class Branch_Control implements Serializable {
         this.branchname_storage.add(initial_branch);
     }
 
+    /** Reads the Branch Control object from the Branch Control file. */
+    public static Branch_Control load(){
+        byte[] bytes = readContents(Branch_Control_file);
+        if (Format.is_serialized(bytes)){
+            return readObject(Branch_Control_file, Branch_Control.class);
+        }
+        return decode(bytes);
+    }
+
+    /** Writes the Branch Control object to the Branch Control file. */
+    public void save(){
+        writeContents(Branch_Control_file, encode());
+    }
+
+    /** Returns the Branch Control object encoded as [active branch][varint count][branch name] per branch (see Format). */
+    public byte[] encode(){
+        Format.Writer out = new Format.Writer(Format.BRANCH_CONTROL);
+        out.string(active_branch);
+        out.varlong(branchname_storage.size());
+        for (String branch : branchname_storage){
+            out.string(branch);
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the Branch Control object encoded in BYTES by encode. */
+    public static Branch_Control decode(byte[] bytes){
+        Format.Reader in = new Format.Reader(bytes, Format.BRANCH_CONTROL);
+        Branch_Control branchcontrol = new Branch_Control(in.string());
+        branchcontrol.branchname_storage.clear();
+        for (int i = in.varint(); i > 0; i--){
+            branchcontrol.branchname_storage.add(in.string());
+        }
+        return branchcontrol;
+    }
+
     /** Method is called whenever new branch is created.
      * New branch name is added to branchname storage. */
     public void add_branch(String new_branch){
@@ -0,0 +1,148 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static gitlet.Repository.*;
+
+/** Keeps what commands read from the .gitlet folder in memory between the commands run by the daemon (see Daemon).
+ *  When Gitlet is run directly, nothing is kept and every method reads straight through.
+ *
+ *  Nothing a command could change is shared with the commands after it. Commits and trees are kept as their
+ *  encoded bytes, by ID, least recently used first, and decoded afresh for each command. They are named by their
+ *  contents, so they never change; only migration rewrites commits, and it forgets them. The files directly in the
+ *  .gitlet folder, such as HEAD, the branches, Branch Control, the Staging Area and the Commit Graph, are kept as
+ *  read, and each command is given a copy. They are kept with the size, modified time and file key they had when
+ *  read, and read again if any of these changed, so that commands run outside the daemon are seen; a command
+ *  writing one forgets it.
+ *
+ *  A file changed twice within the resolution of its modified time could look unchanged. As git does for the
+ *  index, a file read less than RACY_WINDOW after it was modified is not trusted, and is read again next time;
+ *  on file systems keeping modified times in whole seconds, the window is COARSE_RACY_WINDOW. */
+class Cache {
+
+    /** True while the daemon runs commands. */
+    static boolean enabled;
+
+    static final long RACY_WINDOW = 100;
+    static final long COARSE_RACY_WINDOW = 2000;
+
+    /** Largest total size of the commits and trees kept. */
+    static final long MAX_OBJECT_BYTES = 64L << 20;
+
+    /** Largest file of the .gitlet folder kept. */
+    static final long MAX_FILE_SIZE = 64L << 20;
+
+    /** A file as it was read, with its size, modified time and file key then. Only trusted entries are used. */
+    private static class Entry {
+        final Object stamp;
+        final Object value;
+        final boolean trusted;
+
+        Entry(Object stamp, Object value, boolean trusted) {
+            this.stamp = stamp;
+            this.value = value;
+            this.trusted = trusted;
+        }
+    }
+
+    private static final HashMap<File, Entry> files = new HashMap<>();
+    private static final LinkedHashMap<String, byte[]> objects = new LinkedHashMap<>(16, 0.75f, true);
+    private static long object_bytes;
+
+    /** Returns the contents of FILE read by READ, of class TYPE, kept from an earlier command if FILE is directly in
+     *  the .gitlet folder and has not changed since. What is kept is never returned itself, only a COPY of it, so
+     *  that a command changing what it was given, or failing part way through changing it, leaves it as read. */
+    static <T> T file(File file, Class<T> type, Function<File, T> read, UnaryOperator<T> copy) {
+        if (!enabled || !GITLET_DIR.equals(file.getParentFile())) {
+            return read.apply(file);
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            forget(file);
+            return read.apply(file);
+        }
+        Object stamp = stamp(attributes);
+        synchronized (Cache.class) {
+            Entry entry = files.get(file);
+            if (entry != null && entry.trusted && entry.stamp.equals(stamp) && type.isInstance(entry.value)) {
+                return copy.apply(type.cast(entry.value));
+            }
+        }
+        long read_at = System.currentTimeMillis();
+        T value = read.apply(file);
+        if (attributes.size() <= MAX_FILE_SIZE) {
+            long modified = attributes.lastModifiedTime().toMillis();
+            boolean coarse = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) % 1_000_000_000L == 0;
+            boolean trusted = read_at - modified >= (coarse ? COARSE_RACY_WINDOW : RACY_WINDOW);
+            synchronized (Cache.class) {
+                files.put(file, new Entry(stamp, copy.apply(value), trusted));
+            }
+        }
+        return value;
+    }
+
+    /** Forgets FILE, for when it is written. */
+    static synchronized void forget(File file) {
+        files.remove(file);
+    }
+
+    /** Returns the encoded bytes of the commit or tree with the given ID, read by READ unless they were kept.
+     *  They are decoded by each caller, and never changed. */
+    static byte[] object(String objectID, Supplier<byte[]> read) {
+        if (!enabled) {
+            return read.get();
+        }
+        synchronized (Cache.class) {
+            byte[] object = objects.get(objectID);
+            if (object != null) {
+                return object;
+            }
+        }
+        byte[] object = read.get();
+        synchronized (Cache.class) {
+            if (objects.put(objectID, object) == null) {
+                object_bytes += object.length;
+            }
+            Iterator<byte[]> oldest = objects.values().iterator();
+            while (object_bytes > MAX_OBJECT_BYTES && oldest.hasNext()) {
+                object_bytes -= oldest.next().length;
+                oldest.remove();
+            }
+        }
+        return object;
+    }
+
+    /** Forgets the object with the given ID, for when it is rewritten. */
+    static synchronized void forget_object(String objectID) {
+        byte[] object = objects.remove(objectID);
+        if (object != null) {
+            object_bytes -= object.length;
+        }
+    }
+
+    /** Forgets everything, as after a command that failed part way, which may have left what it read changed. */
+    static synchronized void clear() {
+        files.clear();
+        objects.clear();
+        object_bytes = 0;
+    }
+
+    private static Object stamp(BasicFileAttributes attributes) {
+        return List.of(attributes.size(), attributes.lastModifiedTime(),
+                Objects.requireNonNullElse(attributes.fileKey(), ""));
+    }
+}
@@ -0,0 +1,232 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** For every commit of the Commit Graph, a Bloom filter of the paths it changed from its first parent, so that the
+ *  history of a path (log -- [path]) can skip the commits that did not change it without reading them.
+ *
+ *  A Bloom filter is a bit array in which each path sets HASHES bits, chosen by hashing the path. A path whose bits
+ *  are not all set was certainly not added; a path whose bits are all set probably was, but may not have been, so a
+ *  commit whose filter may hold a path is checked against its trees. With BITS_PER_PATH bits per path, about one
+ *  filter in a hundred wrongly seems to hold a path. The paths of a commit are the files it added, removed or changed,
+ *  and every directory above them, so that the history of a directory can be found too. A commit changing more than
+ *  MAX_PATHS paths has no filter, and is always checked.
+ *
+ *  ChangedPaths file: [4 byte MAGIC] then a record per commit, in the order of the Commit Graph,
+ *                     [20 byte commit ID][int length][filter], where a length of TOO_MANY stands for no filter.
+ *
+ *  The records of new commits, and of every commit when the file does not exist, are added when the file is loaded,
+ *  from the trees of the commits and their first parents. If the last record is not that of the commit with its
+ *  index in the Commit Graph, as when the graph was built again in another order, the whole file is built again. */
+class ChangedPaths {
+
+    private static final byte[] MAGIC = {'g', 'c', 'p', 'f'};
+    private static final int ID_LENGTH = Pack.ID_LENGTH;
+
+    static final int BITS_PER_PATH = 10;
+    static final int HASHES = 7;
+    static final int MAX_PATHS = 512;
+    private static final int TOO_MANY = -1;
+
+    /** Seeds of the two hashes of a path that the HASHES bits are made from. */
+    private static final int SEED = 0x293ae76f;
+    private static final int SECOND_SEED = 0x7e646e2c;
+
+    /** The whole file, and the offset in it of the record of each commit. */
+    private final byte[] bytes;
+    private final ByteBuffer in;
+    private final int[] offsets;
+
+    private ChangedPaths(byte[] bytes, int[] offsets) {
+        this.bytes = bytes;
+        this.in = ByteBuffer.wrap(bytes);
+        this.offsets = offsets;
+    }
+
+    /** Reads the ChangedPaths file of the repository, first adding the records of the commits of GRAPH it lacks. */
+    static ChangedPaths load(CommitGraph graph) {
+        byte[] bytes = ChangedPaths_file.exists() ? Utils.readContents(ChangedPaths_file) : new byte[0];
+        int[] offsets = new int[graph.size];
+        int count = 0;
+        int end = MAGIC.length;
+        if (bytes.length < MAGIC.length || !Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            end = 0;
+        } else {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            while (end + ID_LENGTH + 4 <= bytes.length && count < graph.size) {
+                int length = Math.max(0, in.getInt(end + ID_LENGTH));
+                if (end + ID_LENGTH + 4 + length > bytes.length) {
+                    break;
+                }
+                offsets[count] = end;
+                count += 1;
+                end += ID_LENGTH + 4 + length;
+            }
+        }
+        if (count > 0 && !Arrays.equals(bytes, offsets[count - 1], offsets[count - 1] + ID_LENGTH,
+                Pack.to_bytes(graph.ids[count - 1]), 0, ID_LENGTH)) {
+            count = 0;
+            end = 0;
+        }
+        if (count == graph.size && end == bytes.length) {
+            return new ChangedPaths(bytes, offsets);
+        }
+        byte[] added = records(graph, count);
+        try (RandomAccessFile file = new RandomAccessFile(ChangedPaths_file, "rw")) {
+            // A record cut short by a crash while it was written is written again
+            file.setLength(end);
+            file.seek(end);
+            if (end == 0) {
+                file.write(MAGIC);
+                end = MAGIC.length;
+            }
+            file.write(added);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            Cache.forget(ChangedPaths_file);
+        }
+        return load(graph);
+    }
+
+    /** Returns the records of the commits of GRAPH from index FROM on, made from the trees of each commit and its
+     *  first parent. The commits are read ahead by a HistoryWalker. */
+    private static byte[] records(CommitGraph graph, int from) {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        // The tree of the commit just before, which is most often the parent
+        String previous_treeID = null;
+        try (HistoryWalker commits = new HistoryWalker(Arrays.asList(graph.ids).subList(from, graph.size))) {
+            for (int i = from; i < graph.size; i++) {
+                String treeID = commits.next().tree();
+                int parent = graph.parents[i];
+                String parent_treeID = parent == CommitGraph.NONE ? null
+                        : parent == i - 1 && i > from ? previous_treeID
+                        : ObjectStore.get_commit(graph.ids[parent]).tree();
+                previous_treeID = treeID;
+                byte[] filter = filter(changed_paths(parent_treeID, treeID));
+                out.write(Pack.to_bytes(graph.ids[i]));
+                out.writeInt(filter == null ? TOO_MANY : filter.length);
+                if (filter != null) {
+                    out.write(filter);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return records.toByteArray();
+    }
+
+    /** Returns the paths of the files that differ between the trees BEFOREID and AFTERID, and of every directory
+     *  above them. */
+    static Set<String> changed_paths(String beforeID, String afterID) {
+        HashSet<String> paths = new HashSet<>();
+        for (TreeDiff.Change change : new TreeDiff().diff(beforeID, afterID)) {
+            String path = change.path;
+            while (paths.add(path)) {
+                int slash = path.lastIndexOf('/');
+                if (slash < 0) {
+                    break;
+                }
+                path = path.substring(0, slash);
+            }
+        }
+        return paths;
+    }
+
+    /** Returns a Bloom filter of PATHS, or null if there are more than MAX_PATHS of them. */
+    static byte[] filter(Collection<String> paths) {
+        if (paths.size() > MAX_PATHS) {
+            return null;
+        }
+        byte[] filter = new byte[(paths.size() * BITS_PER_PATH + 7) / 8];
+        for (String path : paths) {
+            long hash = hash(path);
+            for (int k = 0; k < HASHES; k++) {
+                int bit = bit(hash, k, filter.length * 8);
+                filter[bit >>> 3] |= 1 << (bit & 7);
+            }
+        }
+        return filter;
+    }
+
+    /** Returns the two hashes of PATH that its bits are chosen by, as one long (see filter and may_contain). */
+    static long hash(String path) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        return (long) murmur3(bytes, SECOND_SEED) << 32 | (murmur3(bytes, SEED) & 0xffffffffL);
+    }
+
+    /** Returns true if the commit at index I of the Commit Graph may have changed the path with the given HASH,
+     *  and false if it certainly did not. */
+    boolean may_contain(int i, long hash) {
+        int offset = offsets[i] + ID_LENGTH;
+        int length = in.getInt(offset);
+        return length == TOO_MANY || may_contain(bytes, offset + 4, length, hash);
+    }
+
+    /** Returns true if the filter of LENGTH bytes at OFFSET in BYTES may hold the path with the given HASH. */
+    static boolean may_contain(byte[] bytes, int offset, int length, long hash) {
+        if (length == 0) {
+            return false;
+        }
+        for (int k = 0; k < HASHES; k++) {
+            int bit = bit(hash, k, length * 8);
+            if ((bytes[offset + (bit >>> 3)] & 1 << (bit & 7)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the K-th of the HASHES bits, out of BITS, of the path with the given HASH. The bits are made from the
+     *  two hashes of the path by enhanced double hashing, h1 + k * h2 + (k^3 - k) / 6, whose cubic term keeps the
+     *  bits apart even where BITS, a multiple of 8, and h2 share a factor. */
+    private static int bit(long hash, int k, int bits) {
+        return Integer.remainderUnsigned((int) hash + k * (int) (hash >>> 32) + (k * k * k - k) / 6, bits);
+    }
+
+    /** The 32 bit MurmurHash3 of BYTES. */
+    private static int murmur3(byte[] bytes, int seed) {
+        int h = seed;
+        int i = 0;
+        for (; i + 4 <= bytes.length; i += 4) {
+            int k = (bytes[i] & 0xff) | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff) << 16 | bytes[i + 3] << 24;
+            h ^= mix(k);
+            h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+        }
+        // The last 1 to 3 bytes
+        int tail = bytes.length & 3;
+        int k = 0;
+        if (tail == 3) {
+            k ^= (bytes[i + 2] & 0xff) << 16;
+        }
+        if (tail >= 2) {
+            k ^= (bytes[i + 1] & 0xff) << 8;
+        }
+        if (tail >= 1) {
+            k ^= bytes[i] & 0xff;
+            h ^= mix(k);
+        }
+        h ^= bytes.length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int mix(int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1b873593;
+    }
+}
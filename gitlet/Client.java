@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Sends a Gitlet command to the daemon of the repository (see Daemon), and writes out its output and exits with
+ *  its status, as if the command had been run here. If no daemon is running, the command is run directly.
+ *  Usage: java gitlet.Client ARGS, in place of java gitlet.Main ARGS.
+ *
+ *  The client starts no more than it needs to connect, so that its own start up stays short; the daemon command
+ *  itself is always run directly. */
+public class Client {
+
+    /** The protocol of the daemon (see Daemon). */
+    static final byte[] MAGIC = {'g', 'd', 'm', 'n'};
+    static final byte EXIT = 0;
+    static final byte OUT = 1;
+    static final byte ERR = 2;
+
+    /** The socket the daemon of the repository listens on, daemon.sock in the .gitlet folder. It is found here
+     *  rather than from Repository, whose loading the client avoids. */
+    static final File SOCKET = Paths.get(System.getProperty("user.dir"), ".gitlet", "daemon.sock").toFile();
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public static void main(String[] args) {
+        if (args.length == 0 || args[0].equals("daemon")) {
+            Main.main(args);
+            return;
+        }
+        int status = run(Arrays.asList(args), System.out, System.err);
+        if (status < 0) {
+            Main.main(args);
+            return;
+        }
+        System.out.flush();
+        System.exit(status);
+    }
+
+    /** Has the daemon run the command ARGS, writing its output to OUT and ERR, and returns its exit status, or -1
+     *  if no daemon is running. */
+    static int run(List<String> args, OutputStream out, OutputStream err) {
+        try (SocketChannel daemon = connect()) {
+            if (daemon == null) {
+                return -1;
+            }
+            return request(daemon, args, out, err);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Returns a connection to the daemon of the repository, or null if none is running. */
+    static SocketChannel connect() {
+        if (!SOCKET.exists()) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException | UnsupportedOperationException e) {
+            // A socket left by a daemon that did not stop cleanly
+            return null;
+        }
+    }
+
+    /** Sends the command ARGS through DAEMON, writes its output to OUT and ERR, and returns its exit status. */
+    static int request(SocketChannel daemon, List<String> args, OutputStream out, OutputStream err)
+            throws IOException {
+        DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(daemon),
+                BUFFER_SIZE));
+        request.write(MAGIC);
+        ArrayList<String> properties = new ArrayList<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("gitlet.")) {
+                properties.add(name);
+            }
+        }
+        request.writeInt(properties.size());
+        for (String name : properties) {
+            write_string(request, name);
+            write_string(request, System.getProperty(name));
+        }
+        request.writeInt(args.size());
+        for (String arg : args) {
+            write_string(request, arg);
+        }
+        request.flush();
+
+        DataInputStream reply = new DataInputStream(Channels.newInputStream(daemon));
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            while (true) {
+                byte stream = reply.readByte();
+                if (stream == EXIT) {
+                    int status = reply.readInt();
+                    out.flush();
+                    err.flush();
+                    return status;
+                }
+                OutputStream to = stream == ERR ? err : out;
+                for (int left = reply.readInt(); left > 0; ) {
+                    int read = reply.read(buffer, 0, Math.min(left, buffer.length));
+                    if (read < 0) {
+                        throw new EOFException();
+                    }
+                    to.write(buffer, 0, read);
+                    left -= read;
+                }
+            }
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("The daemon stopped before the command finished.");
+        }
+    }
+
+    static String read_string(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void write_string(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
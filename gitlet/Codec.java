@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** The compression codecs of the Object Store. Every object file records the ID of the codec its
+ *  contents were written with, so objects written with different codecs can be read side by side.
+ *
+ *  The codec used for new objects is chosen with the gitlet.codec system property
+ *  (java -Dgitlet.codec=lz gitlet.Main ...), and is DEFLATE when not set. */
+public enum Codec {
+
+    /** Contents stored as they are. */
+    NONE(0, "none") {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return in;
+        }
+    },
+
+    /** java.util.zip's Deflate, for the best compression of text. */
+    DEFLATE(1, "deflate") {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION), ObjectStore.BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    def.end();
+                }
+            };
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return new InflaterInputStream(in, new Inflater(), ObjectStore.BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end();
+                }
+            };
+        }
+    },
+
+    /** LzCodec, a much faster compressor with a lower compression ratio. */
+    LZ(2, "lz") {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return new LzCodec.Output(out);
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return new LzCodec.Input(in);
+        }
+    };
+
+    /** The ID recorded in the header of object files. */
+    public final byte id;
+
+    /** The name used to choose this codec. */
+    public final String name;
+
+    Codec(int id, String name) {
+        this.id = (byte) id;
+        this.name = name;
+    }
+
+    /** Returns a stream that compresses what is written to it onto OUT. Closing it closes OUT. */
+    abstract OutputStream compress(OutputStream out);
+
+    /** Returns a stream of the decompressed contents of IN. Closing it closes IN. */
+    abstract InputStream decompress(InputStream in);
+
+    /** Returns the codec with the given ID. */
+    static Codec of(byte id) {
+        for (Codec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("unknown codec " + id);
+    }
+
+    /** Returns the codec to write new objects with. */
+    static Codec chosen() {
+        String name = System.getProperty("gitlet.codec", DEFLATE.name);
+        for (Codec codec : values()) {
+            if (codec.name.equals(name)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("unknown codec " + name);
+    }
+}
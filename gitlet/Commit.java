@@ -1,7 +1,5 @@
 package gitlet;
 
-import java.io.File;
-import java.io.IOException;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.*;
@@ -15,11 +13,14 @@ import static gitlet.Utils.*;
  * 1. Timestamp
  * 2. Log message
  * 3. 2 Pointer holders are parent commits, in the event of merges.
- * 4. Mapping of file names to blob references
+ * 4. Mapping of file names to blob references, kept as a root Tree
  *
  *  @author EL NAIT */
 public class Commit implements Serializable {
 
+    /** Fixed so that commits written before headers existed can still be read. */
+    private static final long serialVersionUID = -6178994669324430200L;
+
     /** The message of this Commit. */
     public final String message;
 
@@ -39,8 +40,18 @@ public class Commit implements Serializable {
      *  and the value being the SHA1 hash of the blob corresponding to each file.
      *  Treemap is chosen instead of hashmaps because the order of things within HashMap is non-deterministic,
      *  which can affect the SHA1 hashing of the Commit object; one could get different hashes when serialising
-     *  and deserializing the commit. */
-    public TreeMap< String, String> files;
+     *  and deserializing the commit.
+     *  For commits with a root tree, it is only built from the trees when first asked for; see files(). */
+    private TreeMap< String, String> files;
+
+    /** The hash and size of the contents of each file in this commit, with the same keys as files.
+     *  This lets add and status compare files with this commit without reading any blob.
+     *  Null for commits made before headers were introduced. */
+    private TreeMap<String, Blob.Header> headers;
+
+    /** The tree ID of the root Tree of this commit, which holds its files.
+     *  Null for commits made before trees were introduced, which hold their files in files and headers. */
+    public String treeID;
 
    /** This constructor method is for initial commit. */
     public Commit(String message, Date timestamp){
@@ -50,6 +61,15 @@ public class Commit implements Serializable {
         this.Secondary_parent_commitID = null;
         this.branchname = "master";
         this.files = new TreeMap<>(); //files changed from null to empty TreeMap.
+        this.headers = new TreeMap<>();
+    }
+
+    /** This constructor method is for commits decoded from their stored form. */
+    private Commit(String message, Date timestamp, String Default_parent_commitID, String Secondary_parent_commitID){
+        this.message = message;
+        this.timestamp = timestamp;
+        this.Default_parent_commitID = Default_parent_commitID;
+        this.Secondary_parent_commitID = Secondary_parent_commitID;
     }
 
     public Commit(String message, String HEAD, String Merged_HEAD, Commit Parent, StagingArea SA, Branch_Control branchcontrol){
@@ -59,35 +79,26 @@ public class Commit implements Serializable {
         this.Default_parent_commitID = HEAD;
         this.Secondary_parent_commitID = Merged_HEAD;
 
-        // The files container is inherited from the parent commit and then updated with versions from Staging Area
-        this.files = new TreeMap<>(Parent.files);
-
         // Files in staging area are given to be different from versions in previous commit
+        TreeMap<String, Blob.Header> added = new TreeMap<>();
         for (Map.Entry<String, Blob> name_blob : SA.Add.entrySet()){
 
-            // Get name of blob
-            String name = name_blob.getKey();
-            // Get blob
-            Blob blob = name_blob.getValue();
-
-            // Creates blob file with name being the SHA1 hash of blob object in Staging Area
-            String blobID = sha1(serialize(blob));
-            File blob_file = join(Blobs, blobID);
-            try {
-                blob_file.createNewFile();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            // Write blob object to its blob file
-            writeObject(blob_file, blob);
-
-            // Add blob to file container for new commit
-            files.put(name, blobID);
+            // Stores the blob in the Object Store, where it is named by the SHA1 hash of its contents
+            ObjectStore.put_blob(name_blob.getValue());
+            added.put(name_blob.getKey(), name_blob.getValue().header());
         }
 
-        // Removes files that are called with rm in creating new commit; file is untracked
-        for (String file_to_remove : SA.Remove){
-            files.remove(file_to_remove);
+        // The files are inherited from the parent commit and then updated with versions from Staging Area,
+        // and files that are called with rm are untracked. Only the trees of the directories changed are written.
+        if (Parent.treeID != null){
+            this.treeID = Tree.update(Parent.treeID, added, SA.Remove);
+        }
+        else {
+            // The parent was made before trees existed, so trees are written for all of its files once
+            TreeMap<String, Blob.Header> parent_headers = Parent.headers() != null ? new TreeMap<>(Parent.headers()) : read_headers(Parent.files());
+            parent_headers.keySet().removeAll(SA.Remove);
+            parent_headers.putAll(added);
+            this.treeID = Tree.write(parent_headers);
         }
 
         // Staging Area is cleaned at the end.
@@ -95,6 +106,134 @@ public class Commit implements Serializable {
         // this approach prevents ConcurrentModificationException from occuring
         // since collections typically cannot be modified while being iterated.
         SA.clean();
-        writeObject(StagingArea_file, SA);
+        SA.save();
+    }
+
+    /** Returns the tree ID of the root tree of this commit. For a commit made before trees were introduced,
+     *  the trees of its files are written the first time this is called. */
+    public String tree(){
+        if (treeID != null){
+            return treeID;
+        }
+        if (written_treeID == null){
+            written_treeID = Tree.write(headers() != null ? headers() : read_headers(files()));
+        }
+        return written_treeID;
+    }
+
+    /** The root tree written by tree() for a commit made before trees were introduced. It is not part of the
+     *  commit itself, whose ID would otherwise change. */
+    private transient String written_treeID;
+
+    /** Returns the files of this commit, by filename, with the blob ID of each. */
+    public TreeMap<String, String> files(){
+        if (files == null){
+            load_tree();
+        }
+        return files;
+    }
+
+    /** Returns the hash and size of the contents of each file of this commit, by filename,
+     *  or null if this commit was made before headers were introduced. */
+    public TreeMap<String, Blob.Header> headers(){
+        if (files == null){
+            load_tree();
+        }
+        return headers;
+    }
+
+    /** Replaces the files of this commit by FILES, by filename with the hash and size of the contents of each,
+     *  storing them as a new root tree. Only for rewriting commits in a new format, see Repository.migrate. */
+    void replace_files(SortedMap<String, Blob.Header> files){
+        this.treeID = Tree.write(files);
+        this.files = null;
+        this.headers = null;
+    }
+
+    /** Reads all trees of this commit into files and headers. */
+    private void load_tree(){
+        TreeMap<String, String> files = new TreeMap<>();
+        TreeMap<String, Blob.Header> headers = new TreeMap<>();
+        Tree.flatten(treeID, "", files, headers);
+        this.files = files;
+        this.headers = headers;
+    }
+
+    /** Returns this commit encoded as
+     *  [varint timestamp][message][parent ID or 0][second parent ID or 0][branch name][layout byte]
+     *  followed by, for layout TREE_LAYOUT, [root tree ID], and otherwise a table of files sorted by name,
+     *  each [name][blob ID][varint size] if the layout is 1, for commits with headers, and [name][blob ID]
+     *  if it is 0 (see Format). Content hashes are not written, since every blob ID is the hash of the blob's
+     *  contents. The commit ID is the SHA1 hash of these bytes. */
+    public byte[] encode(){
+        Format.Writer out = new Format.Writer(Format.COMMIT);
+        out.varlong(timestamp.getTime());
+        out.string(message);
+        out.optional_id(Default_parent_commitID);
+        out.optional_id(Secondary_parent_commitID);
+        out.string(branchname);
+        if (treeID != null){
+            out.write(TREE_LAYOUT);
+            out.id(treeID);
+            return out.toByteArray();
+        }
+        out.write(headers != null ? 1 : 0);
+        out.table(files.size());
+        for (Map.Entry<String, String> name_blobID : files.entrySet()){
+            out.path(name_blobID.getKey());
+            out.id(name_blobID.getValue());
+            if (headers != null){
+                Blob.Header header = headers.get(name_blobID.getKey());
+                if (!header.content_compare.equals(name_blobID.getValue())){
+                    throw new IllegalArgumentException("blob " + name_blobID.getValue() + " is not named by its contents");
+                }
+                out.varlong(header.size);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the commit encoded in BYTES by encode. */
+    public static Commit decode(byte[] bytes){
+        Format.Reader in = new Format.Reader(bytes, Format.COMMIT);
+        Date timestamp = new Date(in.varlong());
+        String message = in.string();
+        String parent = in.optional_id();
+        String second_parent = in.optional_id();
+        Commit commit = new Commit(message, timestamp, parent, second_parent);
+        commit.branchname = in.string();
+        byte layout = in.read_byte();
+        if (layout == TREE_LAYOUT){
+            commit.treeID = in.id();
+            return commit;
+        }
+        boolean has_headers = layout != 0;
+        int count = in.table();
+        ArrayList<String> names = new ArrayList<>(count);
+        ArrayList<String> blobIDs = new ArrayList<>(count);
+        ArrayList<Blob.Header> headers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++){
+            names.add(in.path());
+            blobIDs.add(in.id());
+            if (has_headers){
+                headers.add(new Blob.Header(blobIDs.get(i), in.varlong()));
+            }
+        }
+        // Names were written in order, so the maps are built without comparing them
+        commit.files = Format.sorted_map(names, blobIDs);
+        commit.headers = has_headers ? Format.sorted_map(names, headers) : null;
+        return commit;
+    }
+
+    /** Layout byte of an encoded commit whose files are in a root tree. */
+    private static final byte TREE_LAYOUT = 2;
+
+    /** Builds the headers of a commit made before headers existed, by reading each of its blobs once. */
+    private static TreeMap<String, Blob.Header> read_headers(TreeMap<String, String> files){
+        TreeMap<String, Blob.Header> headers = new TreeMap<>();
+        for (Map.Entry<String, String> name_blobID : files.entrySet()){
+            headers.put(name_blobID.getKey(), ObjectStore.read_header(name_blobID.getValue()));
+        }
+        return headers;
     }
 }
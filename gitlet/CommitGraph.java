@@ -0,0 +1,271 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The Commit Graph keeps the ancestry of every commit in one compact file, so that
+ *  history walks (log, global-log, split point search) never have to deserialize Commit objects.
+ *
+ *  Every commit is given an index, in the order it was recorded, and a parent is always recorded
+ *  before its children. For each index the graph holds:
+ *      1. The commit ID
+ *      2. The indices of the default and secondary parent commits (NONE if absent)
+ *      3. The timestamp
+ *      4. The generation number; 1 for the initial commit, else 1 + the largest generation of its parents
+ *      5. The commit message, so that log can be printed from the graph alone
+ *
+ *  On disk each commit is one record, appended when the commit is made:
+ *      [40 byte commit ID][int parent][int second parent][long timestamp][int generation][int length][message]
+ *  A record cut short by a crash while it was appended is ignored, and written over by the next append. */
+public class CommitGraph {
+
+    /** Length of a record of the Commit Graph file before its message. */
+    private static final int RECORD_HEADER = UID_LENGTH + 4 + 4 + 8 + 4 + 4;
+
+    /** Index used for a parent that does not exist. */
+    public static final int NONE = -1;
+
+    /** Number of commits in the graph. */
+    public int size;
+
+    public String[] ids;
+    public int[] parents;
+    public int[] second_parents;
+    public long[] timestamps;
+    public int[] generations;
+    public String[] messages;
+
+    /** Maps commit ID to its index. Built lazily since log only ever walks by index. */
+    private HashMap<String, Integer> index;
+
+    /** Length of the complete records of the Commit Graph file. A record cut short by a crash during append is
+     *  past it, and is written over by the next append. */
+    private long length;
+
+    /** Creates an empty graph held only in memory. */
+    CommitGraph() {
+        ids = new String[16];
+        parents = new int[16];
+        second_parents = new int[16];
+        timestamps = new long[16];
+        generations = new int[16];
+        messages = new String[16];
+    }
+
+    /** Reads the Commit Graph file. If the repository was created before the graph existed,
+     *  the graph is built once from the Commits folder and written out. */
+    public static CommitGraph load() {
+        if (!CommitGraph_file.exists()) {
+            return rebuild();
+        }
+        return Cache.file(CommitGraph_file, CommitGraph.class, CommitGraph::read, CommitGraph::copy);
+    }
+
+    /** Returns a copy of this graph, which can be appended to without changing this one. */
+    private CommitGraph copy() {
+        CommitGraph copy = new CommitGraph();
+        copy.size = size;
+        copy.ids = Arrays.copyOf(ids, Math.max(size, 1));
+        copy.parents = Arrays.copyOf(parents, Math.max(size, 1));
+        copy.second_parents = Arrays.copyOf(second_parents, Math.max(size, 1));
+        copy.timestamps = Arrays.copyOf(timestamps, Math.max(size, 1));
+        copy.generations = Arrays.copyOf(generations, Math.max(size, 1));
+        copy.messages = Arrays.copyOf(messages, Math.max(size, 1));
+        copy.length = length;
+        return copy;
+    }
+
+    /** Reads the Commit Graph in FILE, up to the end of its last complete record. */
+    private static CommitGraph read(File file) {
+        CommitGraph graph = new CommitGraph();
+        long file_length = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] id = new byte[UID_LENGTH];
+            while (true) {
+                byte[] message;
+                int parent, second_parent, generation;
+                long timestamp;
+                try {
+                    in.readFully(id);
+                    parent = in.readInt();
+                    second_parent = in.readInt();
+                    timestamp = in.readLong();
+                    generation = in.readInt();
+                    int message_length = in.readInt();
+                    if (message_length < 0 || graph.length + RECORD_HEADER + message_length > file_length) {
+                        break;
+                    }
+                    message = new byte[message_length];
+                    in.readFully(message);
+                } catch (EOFException e) {
+                    break;
+                }
+                graph.put(new String(id, StandardCharsets.US_ASCII), parent, second_parent, timestamp, generation,
+                        new String(message, StandardCharsets.UTF_8));
+                graph.length += RECORD_HEADER + message.length;
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return graph;
+    }
+
+    /** Adds the commit with the given ID to the graph and appends its record to the Commit Graph file.
+     *  Both parents must already be in the graph. Returns the index of the new commit. */
+    public int append(String commitID, Commit commit) {
+        int parent = commit.Default_parent_commitID == null ? NONE : recent_index_of(commit.Default_parent_commitID);
+        int second_parent = commit.Secondary_parent_commitID == null ? NONE
+                : recent_index_of(commit.Secondary_parent_commitID);
+        int generation = 1;
+        if (parent != NONE) {
+            generation = Math.max(generation, generations[parent] + 1);
+        }
+        if (second_parent != NONE) {
+            generation = Math.max(generation, generations[second_parent] + 1);
+        }
+        int i = put(commitID, parent, second_parent, commit.timestamp.getTime(), generation, commit.message);
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try (RandomAccessFile file = new RandomAccessFile(CommitGraph_file, "rw")) {
+            write_record(new DataOutputStream(record), i);
+            // A record cut short by a crash during an earlier append is written over
+            file.setLength(length);
+            file.seek(length);
+            file.write(record.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            Cache.forget(CommitGraph_file);
+        }
+        length += record.size();
+        return i;
+    }
+
+    /** Returns the index of the commit with the given ID, or NONE if it is not in the graph. */
+    public int index_of(String commitID) {
+        if (index == null) {
+            index = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                index.put(ids[i], i);
+            }
+        }
+        Integer i = index.get(commitID);
+        return i == null ? NONE : i;
+    }
+
+    /** Returns the index of the commit with the given ID, or NONE if it is not in the graph, looking from the newest
+     *  commit back without building the index of every commit ID. For the heads of branches, which are most often
+     *  among the newest commits. */
+    public int recent_index_of(String commitID) {
+        if (index != null) {
+            return index_of(commitID);
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            if (ids[i].equals(commitID)) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    /** Adds an entry in memory only, growing the arrays when full. Returns its index. */
+    int put(String commitID, int parent, int second_parent, long timestamp, int generation, String message) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            second_parents = Arrays.copyOf(second_parents, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+            messages = Arrays.copyOf(messages, capacity);
+        }
+        ids[size] = commitID;
+        parents[size] = parent;
+        second_parents[size] = second_parent;
+        timestamps[size] = timestamp;
+        generations[size] = generation;
+        messages[size] = message;
+        if (index != null) {
+            index.put(commitID, size);
+        }
+        size += 1;
+        return size - 1;
+    }
+
+    private void write_record(DataOutputStream out, int i) throws IOException {
+        byte[] message = messages[i].getBytes(StandardCharsets.UTF_8);
+        out.write(ids[i].getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(parents[i]);
+        out.writeInt(second_parents[i]);
+        out.writeLong(timestamps[i]);
+        out.writeInt(generations[i]);
+        out.writeInt(message.length);
+        out.write(message);
+    }
+
+    /** Builds the graph from every object in the Commits folder and writes the Commit Graph file.
+     *  Commits are visited depth first so that parents are always recorded before their children. */
+    private static CommitGraph rebuild() {
+        HashMap<String, Commit> commits = new HashMap<>();
+        List<String> commitIDs = ObjectStore.commit_ids();
+        try (HistoryWalker walker = new HistoryWalker(commitIDs)) {
+            for (String commitID : commitIDs) {
+                commits.put(commitID, walker.next());
+            }
+        }
+
+        CommitGraph graph = new CommitGraph();
+        graph.index = new HashMap<>();
+        Deque<String> stack = new ArrayDeque<>();
+        for (String start : commits.keySet()) {
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                String commitID = stack.peek();
+                if (graph.index_of(commitID) != NONE) {
+                    stack.pop();
+                    continue;
+                }
+                Commit commit = commits.get(commitID);
+                String parent = commit.Default_parent_commitID;
+                String second_parent = commit.Secondary_parent_commitID;
+                if (parent != null && graph.index_of(parent) == NONE) {
+                    stack.push(parent);
+                } else if (second_parent != null && graph.index_of(second_parent) == NONE) {
+                    stack.push(second_parent);
+                } else {
+                    stack.pop();
+                    int p = parent == null ? NONE : graph.index_of(parent);
+                    int q = second_parent == null ? NONE : graph.index_of(second_parent);
+                    int generation = 1 + Math.max(p == NONE ? 0 : graph.generations[p], q == NONE ? 0 : graph.generations[q]);
+                    graph.put(commitID, p, q, commit.timestamp.getTime(), generation, commit.message);
+                }
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(CommitGraph_file)))) {
+            for (int i = 0; i < graph.size; i++) {
+                graph.write_record(out, i);
+            }
+            graph.length = out.size();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            Cache.forget(CommitGraph_file);
+        }
+        return graph;
+    }
+}
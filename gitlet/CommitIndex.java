@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The Commit Index holds the ID of every commit sorted, so that a commit can be named by a prefix of its ID.
+ *
+ *  CommitIndex file: [4 byte MAGIC][int sorted count] followed by that many 20 byte commit IDs in sorted order,
+ *                    then the 20 byte IDs of the commits made since, in the order they were made.
+ *
+ *  A prefix is looked up by binary search over the sorted IDs, then by a scan of the recent IDs at the end, which
+ *  are never more than MAX_RECENT. Making a commit appends its ID; once there are more than MAX_RECENT recent IDs,
+ *  the whole index is sorted and written again. If the file does not exist, as in repositories made by older
+ *  versions of Gitlet, it is built from the IDs of all stored commits. */
+class CommitIndex {
+
+    private static final byte[] MAGIC = {'g', 'c', 'i', 'x'};
+    private static final int HEADER_LENGTH = 8;
+    private static final int ID_LENGTH = Pack.ID_LENGTH;
+
+    /** Number of recently made commits whose IDs are appended unsorted before the index is sorted again. */
+    static final int MAX_RECENT = 256;
+
+    private final File file;
+
+    /** The whole file, mapped, and the number of sorted IDs and recent IDs in it. */
+    private final ByteBuffer bytes;
+    private final int sorted;
+    private final int recent;
+
+    private CommitIndex(File file, ByteBuffer bytes) {
+        this.file = file;
+        this.bytes = bytes;
+        byte[] magic = new byte[MAGIC.length];
+        bytes.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IllegalArgumentException("Not a commit index: " + file);
+        }
+        this.sorted = bytes.getInt(MAGIC.length);
+        this.recent = (bytes.capacity() - HEADER_LENGTH) / ID_LENGTH - sorted;
+    }
+
+    /** Reads the CommitIndex file of the repository, building it first if it does not exist. */
+    static CommitIndex load() {
+        if (!CommitIndex_file.exists()) {
+            write(CommitIndex_file, ObjectStore.commit_ids());
+        }
+        return load(CommitIndex_file);
+    }
+
+    /** Maps the commit index in FILE, so that a lookup only reads the parts of the file it needs. */
+    static CommitIndex load(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new CommitIndex(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Writes a commit index of all the commit IDS to FILE, replacing it. */
+    static void write(File file, Collection<String> ids) {
+        TreeSet<String> sorted_ids = new TreeSet<>(ids);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_LENGTH + sorted_ids.size() * ID_LENGTH);
+        out.put(MAGIC);
+        out.putInt(sorted_ids.size());
+        for (String id : sorted_ids) {
+            out.put(Pack.to_bytes(id));
+        }
+        try {
+            File temp = File.createTempFile("index", ".tmp", file.getParentFile());
+            writeContents(temp, (Object) out.array());
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Adds the ID of a newly made commit to the index, appending it, or sorting the whole index again if there
+     *  are already MAX_RECENT recent IDs. */
+    void add(String commitID) {
+        if (recent >= MAX_RECENT) {
+            ArrayList<String> ids = new ArrayList<>(sorted + recent + 1);
+            for (int i = 0; i < sorted + recent; i++) {
+                ids.add(id(i));
+            }
+            ids.add(commitID);
+            write(file, ids);
+            return;
+        }
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            // Part of an ID cut short by a crash during an earlier add is written over
+            long end = HEADER_LENGTH + (long) (sorted + recent) * ID_LENGTH;
+            out.setLength(end);
+            out.seek(end);
+            out.write(Pack.to_bytes(commitID));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Returns the IDs of the commits whose IDs start with PREFIX, a string of hexadecimal digits, in order,
+     *  but no more than LIMIT of them. */
+    List<String> find(String prefix, int limit) {
+        ArrayList<String> found = new ArrayList<>();
+        if (prefix.length() > UID_LENGTH || !prefix.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            return found;
+        }
+        String lower = prefix.toLowerCase();
+        // The first sorted ID not below the prefix
+        int low = 0;
+        int high = sorted;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, lower) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < sorted && found.size() < limit && compare(i, lower) == 0; i++) {
+            found.add(id(i));
+        }
+        for (int i = sorted; i < sorted + recent && found.size() < limit; i++) {
+            if (compare(i, lower) == 0 && !found.contains(id(i))) {
+                found.add(id(i));
+            }
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    /** Compares the start of the I-th ID of the index with PREFIX, as many hexadecimal digits as PREFIX has. */
+    private int compare(int i, String prefix) {
+        int offset = HEADER_LENGTH + i * ID_LENGTH;
+        for (int d = 0; d < prefix.length(); d++) {
+            int b = bytes.get(offset + d / 2) & 0xff;
+            int digit = d % 2 == 0 ? b >>> 4 : b & 0xf;
+            int difference = digit - Character.digit(prefix.charAt(d), 16);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the I-th ID of the index as a hexadecimal string. */
+    private String id(int i) {
+        byte[] id = new byte[ID_LENGTH];
+        bytes.get(HEADER_LENGTH + i * ID_LENGTH, id);
+        StringBuilder hex = new StringBuilder(UID_LENGTH);
+        for (byte b : id) {
+            hex.append(Character.forDigit((b >>> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
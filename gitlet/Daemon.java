@@ -0,0 +1,173 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/** Runs Gitlet commands sent by clients (see Client) in one long running JVM, so that commands no longer pay for
+ *  starting a JVM, loading classes and compiling them, and find the commits, trees and files of the .gitlet folder
+ *  they read already in memory (see Cache).
+ *
+ *  The daemon listens on a Unix domain socket, daemon.sock in the .gitlet folder, and runs one command at a time,
+ *  in the order clients connect, exactly as gitlet.Main would run it in the same folder. A request is
+ *      [4 byte MAGIC][int count] and count pairs of [string name][string value], the gitlet.* system properties of
+ *      the client, such as gitlet.stats and gitlet.threads, which hold for that command only
+ *      [int count] and count [string], the arguments of the command
+ *  where a string is [int length][UTF-8 bytes]. The reply is the output of the command as frames, each
+ *  [byte stream][int length][bytes], with stream OUT or ERR, ended by [byte EXIT][int exit status]. The constants of
+ *  the protocol are those of Client.
+ *
+ *  Started by java gitlet.Main daemon, and stopped by java gitlet.Main daemon --stop. */
+class Daemon {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Listens for commands until stopped. */
+    static void serve() {
+        if (Client.connect() != null) {
+            System.out.println("A daemon is already running.");
+            return;
+        }
+        // A socket left by a daemon that did not stop cleanly
+        Client.SOCKET.delete();
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(Client.SOCKET.toPath()));
+            Runtime.getRuntime().addShutdownHook(new Thread(Client.SOCKET::delete));
+            System.out.println("Daemon listening on " + Client.SOCKET.getPath());
+            Cache.enabled = true;
+            PrintStream out = System.out;
+            PrintStream err = System.err;
+            Properties properties = (Properties) System.getProperties().clone();
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    running = run(client);
+                } catch (IOException e) {
+                    // The client went away; the next one is served as usual
+                } finally {
+                    System.setOut(out);
+                    System.setErr(err);
+                    System.setProperties((Properties) properties.clone());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            Cache.enabled = false;
+            Client.SOCKET.delete();
+        }
+    }
+
+    /** Asks the running daemon to stop. */
+    static void stop() {
+        try (SocketChannel daemon = Client.connect()) {
+            if (daemon == null) {
+                System.out.println("No daemon is running.");
+                return;
+            }
+            Client.request(daemon, List.of("daemon", "--stop"), System.out, System.err);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Runs the command sent by CLIENT, writing its output back, and returns false if it was to stop. */
+    private static boolean run(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+        DataOutputStream reply = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client),
+                BUFFER_SIZE));
+        byte[] magic = new byte[Client.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, Client.MAGIC)) {
+            return true;
+        }
+        HashMap<String, String> properties = new HashMap<>();
+        for (int count = in.readInt(); count > 0; count--) {
+            properties.put(Client.read_string(in), Client.read_string(in));
+        }
+        ArrayList<String> args = new ArrayList<>();
+        for (int count = in.readInt(); count > 0; count--) {
+            args.add(Client.read_string(in));
+        }
+
+        PrintStream out = new PrintStream(new BufferedOutputStream(new Frames(reply, Client.OUT), BUFFER_SIZE),
+                false, StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(new Frames(reply, Client.ERR), true, StandardCharsets.UTF_8);
+        boolean stop = args.equals(List.of("daemon", "--stop"));
+        int status = 0;
+        if (stop) {
+            out.println("Daemon stopped.");
+        } else {
+            System.getProperties().stringPropertyNames().stream().filter(name -> name.startsWith("gitlet."))
+                    .forEach(System::clearProperty);
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                if (property.getKey().startsWith("gitlet.")) {
+                    System.setProperty(property.getKey(), property.getValue());
+                }
+            }
+            System.setOut(out);
+            System.setErr(err);
+            // Packs may have been written or removed by commands run outside the daemon
+            Pack.reload();
+            try {
+                Main.main(args.toArray(new String[0]));
+            } catch (RuntimeException | Error e) {
+                e.printStackTrace(err);
+                Cache.clear();
+                status = 1;
+            }
+        }
+        out.flush();
+        err.flush();
+        reply.writeByte(Client.EXIT);
+        reply.writeInt(status);
+        reply.flush();
+        return !stop;
+    }
+
+    /** Writes what is written to it to the client as frames of STREAM. */
+    private static class Frames extends OutputStream {
+        private final DataOutputStream reply;
+        private final byte stream;
+
+        Frames(DataOutputStream reply, byte stream) {
+            this.reply = reply;
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            reply.writeByte(stream);
+            reply.writeInt(length);
+            reply.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            reply.flush();
+        }
+    }
+}
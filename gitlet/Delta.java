@@ -0,0 +1,194 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+
+/** Binary deltas between two versions of a file, used by repack to store a blob as its difference
+ *  from a similar base blob, in the style of git's pack deltas.
+ *
+ *  A delta is [varint length of the result] followed by a list of instructions:
+ *      [INSERT][varint length][bytes]       appends the given bytes to the result
+ *      [COPY][varint offset][varint length] appends LENGTH bytes of the base starting at OFFSET
+ *
+ *  Matches are found by indexing the base in blocks of BLOCK_SIZE bytes by their hash, then rolling
+ *  the same hash over the target one byte at a time. A hit is checked and extended both ways, so
+ *  an edit in the middle of a large file costs roughly the size of the edit. */
+class Delta {
+
+    private static final int INSERT = 0;
+    private static final int COPY = 1;
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int PRIME = 31;
+
+    /** PRIME to the power BLOCK_SIZE, to take the oldest byte out of a rolling hash. */
+    private static final int POWER = power();
+
+    /** Returns a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        Output out = new Output();
+        out.varint(target.length);
+        int[] table = index(base);
+        int mask = table.length - 1;
+
+        int insert_start = 0;
+        int i = 0;
+        int hash = i + BLOCK_SIZE <= target.length ? hash(target, 0) : 0;
+        while (i + BLOCK_SIZE <= target.length) {
+            int candidate = table[hash & mask] - 1;
+            if (candidate >= 0 && same_block(base, candidate, target, i)) {
+                int start = i;
+                int base_start = candidate;
+                // Grow the match backwards into bytes not yet written, then forwards
+                while (start > insert_start && base_start > 0 && target[start - 1] == base[base_start - 1]) {
+                    start -= 1;
+                    base_start -= 1;
+                }
+                int end = i + BLOCK_SIZE;
+                int base_end = candidate + BLOCK_SIZE;
+                while (end < target.length && base_end < base.length && target[end] == base[base_end]) {
+                    end += 1;
+                    base_end += 1;
+                }
+                out.insert(target, insert_start, start - insert_start);
+                out.copy(base_start, end - start);
+                insert_start = end;
+                i = end;
+                if (i + BLOCK_SIZE <= target.length) {
+                    hash = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK_SIZE < target.length) {
+                    hash = roll(hash, target[i], target[i + BLOCK_SIZE]);
+                }
+                i += 1;
+            }
+        }
+        out.insert(target, insert_start, target.length - insert_start);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        Input in = new Input(delta);
+        byte[] result = new byte[in.varint()];
+        int o = 0;
+        try {
+            while (in.position < delta.length) {
+                int op = delta[in.position++];
+                if (op == INSERT) {
+                    int length = in.varint();
+                    System.arraycopy(delta, in.position, result, o, length);
+                    in.position += length;
+                    o += length;
+                } else if (op == COPY) {
+                    int offset = in.varint();
+                    int length = in.varint();
+                    System.arraycopy(base, offset, result, o, length);
+                    o += length;
+                } else {
+                    throw new IllegalArgumentException("corrupt delta");
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        if (o != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Returns a hash table of the blocks of BASE, holding for each hash the block offset plus one (0 for none). */
+    private static int[] index(byte[] base) {
+        int blocks = base.length / BLOCK_SIZE;
+        int size = Integer.highestOneBit(Math.max(blocks, 8) * 2 - 1) << 1;
+        int[] table = new int[size];
+        for (int b = blocks - 1; b >= 0; b--) {
+            // Earlier blocks win, so matches prefer the start of a run of repeated blocks
+            table[hash(base, b * BLOCK_SIZE) & (size - 1)] = b * BLOCK_SIZE + 1;
+        }
+        return table;
+    }
+
+    private static int hash(byte[] b, int start) {
+        int h = 0;
+        for (int k = start; k < start + BLOCK_SIZE; k++) {
+            h = h * PRIME + (b[k] & 0xFF);
+        }
+        return h;
+    }
+
+    private static int power() {
+        int p = 1;
+        for (int k = 0; k < BLOCK_SIZE; k++) {
+            p *= PRIME;
+        }
+        return p;
+    }
+
+    /** Moves the hash of a block one byte on, dropping OUT and taking in IN. */
+    private static int roll(int hash, byte out, byte in) {
+        return hash * PRIME + (in & 0xFF) - POWER * (out & 0xFF);
+    }
+
+    private static boolean same_block(byte[] base, int base_start, byte[] target, int start) {
+        if (base_start + BLOCK_SIZE > base.length) {
+            return false;
+        }
+        for (int k = 0; k < BLOCK_SIZE; k++) {
+            if (base[base_start + k] != target[start + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+
+        void insert(byte[] bytes, int start, int length) {
+            if (length > 0) {
+                write(INSERT);
+                varint(length);
+                write(bytes, start, length);
+            }
+        }
+
+        void copy(int offset, int length) {
+            write(COPY);
+            varint(offset);
+            varint(length);
+        }
+
+        void varint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+    }
+
+    private static class Input {
+        final byte[] bytes;
+        int position;
+
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int varint() {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (position >= bytes.length || shift > 28) {
+                    throw new IllegalArgumentException("corrupt delta");
+                }
+                b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static gitlet.Utils.*;
+
+/** Gitlet's own binary encoding of Commits, Trees, the Staging Area and Branch Control, in place of Java serialization.
+ *
+ *  Every encoded object starts with [1 byte kind][1 byte VERSION], so that the format can change later and an
+ *  object of the wrong kind is caught. Numbers are varints (7 bits per byte, low bits first), strings are
+ *  [varint length][UTF-8 bytes], and IDs are their 20 raw bytes rather than 40 hex digits. Sorted tables of
+ *  paths store each path as [varint length of the prefix shared with the previous path][rest of the path].
+ *  The same object always encodes to the same bytes, so commit IDs, the hash of the encoded Commit, are deterministic.
+ *
+ *  Files written with Java serialization by older versions of Gitlet start with the serialization magic
+ *  0xACED instead, which no kind byte uses; see is_serialized. */
+class Format {
+
+    /** Version of the encoding written by this version of Gitlet. */
+    static final byte VERSION = 1;
+
+    /** Kinds of encoded object. */
+    static final byte COMMIT = 'C';
+    static final byte STAGING_AREA = 'S';
+    static final byte BRANCH_CONTROL = 'B';
+    static final byte TREE = 'T';
+
+    /** Returns true if BYTES were written with Java serialization rather than this encoding. */
+    static boolean is_serialized(byte[] bytes) {
+        return bytes.length >= 2 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED;
+    }
+
+    /** Encodes the fields of one object, in the order they are written. */
+    static class Writer extends ByteArrayOutputStream {
+        private String previous_path = "";
+
+        /** Number of records written, for writers of a list of records rather than one object. */
+        int records;
+
+        Writer(byte kind) {
+            write(kind);
+            write(VERSION);
+        }
+
+        /** A writer of bare fields with no kind and version, to be appended to an object already written. */
+        Writer() {
+        }
+
+        void varlong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void string(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varlong(bytes.length);
+            writeBytes(bytes);
+        }
+
+        void id(String id) {
+            writeBytes(Pack.to_bytes(id));
+        }
+
+        /** Writes an ID that may be null. */
+        void optional_id(String id) {
+            write(id == null ? 0 : 1);
+            if (id != null) {
+                id(id);
+            }
+        }
+
+        /** Writes the next path of a sorted table, sharing its prefix with the previous one. */
+        void path(String path) {
+            int shared = 0;
+            int limit = Math.min(path.length(), previous_path.length());
+            while (shared < limit && path.charAt(shared) == previous_path.charAt(shared)) {
+                shared += 1;
+            }
+            varlong(shared);
+            string(path.substring(shared));
+            previous_path = path;
+        }
+
+        /** Starts a new table of paths. */
+        void table(int size) {
+            varlong(size);
+            previous_path = "";
+        }
+    }
+
+    /** Decodes the fields of one object written by Writer. */
+    static class Reader {
+        private final byte[] bytes;
+        private int position;
+        private String previous_path = "";
+
+        /** Starts reading BYTES, which must hold an object of the given KIND. */
+        Reader(byte[] bytes, byte kind) {
+            this.bytes = bytes;
+            if (bytes.length < 2 || bytes[0] != kind) {
+                throw new IllegalArgumentException("not an encoded " + (char) kind + " object");
+            }
+            if (bytes[1] != VERSION) {
+                throw new IllegalArgumentException("unknown format version " + bytes[1]);
+            }
+            position = 2;
+        }
+
+        byte read_byte() {
+            check(1);
+            return bytes[position++];
+        }
+
+        long varlong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (shift > 63) {
+                    throw new IllegalArgumentException("corrupt encoded object");
+                }
+                b = read_byte();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        int varint() {
+            long value = varlong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("corrupt encoded object");
+            }
+            return (int) value;
+        }
+
+        String string() {
+            int length = varint();
+            check(length);
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        String id() {
+            int length = Pack.ID_LENGTH;
+            check(length);
+            byte[] id = new byte[length];
+            System.arraycopy(bytes, position, id, 0, length);
+            position += length;
+            return toHex(id);
+        }
+
+        String optional_id() {
+            return read_byte() == 0 ? null : id();
+        }
+
+        String path() {
+            int shared = varint();
+            if (shared > previous_path.length()) {
+                throw new IllegalArgumentException("corrupt encoded object");
+            }
+            previous_path = previous_path.substring(0, shared) + string();
+            return previous_path;
+        }
+
+        int table() {
+            previous_path = "";
+            return varint();
+        }
+
+        /** Returns the number of bytes not yet read. */
+        int remaining() {
+            return bytes.length - position;
+        }
+
+        private void check(int length) {
+            if (length > bytes.length - position) {
+                throw new IllegalArgumentException("corrupt encoded object");
+            }
+        }
+    }
+
+    /** Returns a TreeMap of the given KEYS, which must be sorted, and VALUES. The map is built in linear time,
+     *  instead of the n log n of putting the entries one by one. */
+    static <V> TreeMap<String, V> sorted_map(List<String> keys, List<V> values) {
+        return new TreeMap<>(new SortedTable<>(keys, values));
+    }
+
+    /** A read only view of sorted keys and their values, only good for copying into a TreeMap. */
+    private static class SortedTable<V> extends AbstractMap<String, V> implements SortedMap<String, V> {
+        private final List<String> keys;
+        private final List<V> values;
+
+        SortedTable(List<String> keys, List<V> values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<String, V>> iterator() {
+                    return new Iterator<>() {
+                        private int i;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < keys.size();
+                        }
+
+                        @Override
+                        public Map.Entry<String, V> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            i += 1;
+                            return new AbstractMap.SimpleImmutableEntry<>(keys.get(i - 1), values.get(i - 1));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.size();
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super String> comparator() {
+            return null;
+        }
+
+        @Override
+        public String firstKey() {
+            return keys.get(0);
+        }
+
+        @Override
+        public String lastKey() {
+            return keys.get(keys.size() - 1);
+        }
+
+        @Override
+        public SortedMap<String, V> subMap(String fromKey, String toKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedMap<String, V> headMap(String toKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedMap<String, V> tailMap(String fromKey) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Reads the commits of a walk through history ahead of the walk, so that the walk does not wait on each read.
+ *
+ *  The Commit Graph holds the ancestry of every commit, so the commits a walk will visit, parents and second parents
+ *  alike, are known before any of them is read, and are given to the walker as a list of IDs in the order they are
+ *  visited. Worker threads read and decode up to WINDOW commits ahead of the one the walk is at, while the walk
+ *  handles the commits already read; the window bounds the memory held by commits read but not yet visited.
+ *  The number of threads is that of Parallel; with -Dgitlet.threads=1 each commit is read when it is visited.
+ *
+ *  Walks that need only the ancestry, messages and dates of commits, such as log and the split point search of
+ *  merge, walk the Commit Graph alone and read no commits at all. */
+class HistoryWalker implements Iterator<Commit>, AutoCloseable {
+
+    /** Number of commits read ahead of the walk. */
+    static final int WINDOW = 64;
+
+    private final List<String> commitIDs;
+
+    /** Index in commitIDs of the next commit visited, and of the next commit read. */
+    private int next;
+    private int next_read;
+
+    /** The reads of the commits from next to next_read, in order, or null if commits are read when visited. */
+    private final ExecutorService workers;
+    private final ArrayDeque<Future<Commit>> reads = new ArrayDeque<>();
+
+    /** Walks the commits with the given IDS, in order. */
+    HistoryWalker(List<String> commitIDs) {
+        this.commitIDs = commitIDs;
+        int threads = Math.min(Parallel.threads(), commitIDs.size());
+        if (threads <= 1) {
+            workers = null;
+            return;
+        }
+        workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "gitlet-history");
+            thread.setDaemon(true);
+            return thread;
+        });
+        while (next_read < commitIDs.size() && reads.size() < WINDOW) {
+            read_ahead();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next < commitIDs.size();
+    }
+
+    /** Returns the next commit of the walk, waiting for it to be read if it has not been yet. */
+    @Override
+    public Commit next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (workers == null) {
+            return ObjectStore.get_commit(commitIDs.get(next++));
+        }
+        Future<Commit> read = reads.poll();
+        next += 1;
+        if (next_read < commitIDs.size()) {
+            read_ahead();
+        }
+        try {
+            return read.get();
+        } catch (ExecutionException e) {
+            throw Parallel.unchecked(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted");
+        }
+    }
+
+    private void read_ahead() {
+        String commitID = commitIDs.get(next_read++);
+        reads.add(workers.submit(() -> ObjectStore.get_commit(commitID)));
+    }
+
+    /** Stops reading ahead, for walks that end before the last commit. */
+    @Override
+    public void close() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Line by line differences between versions of a file, used by merge to combine the changes made on
+ *  two branches, and by the diff command to show them (see UnifiedDiff).
+ *
+ *  Files are kept as the bytes read from the Object Store, split into lines where they are needed, and are never
+ *  decoded into Strings. Each distinct line of the files compared is given a number, so the diff itself compares
+ *  ints rather than bytes. The diff is Myers' O(ND) algorithm in its linear space form: the longest common
+ *  subsequence of two line sequences is found by bisecting at the middle of the shortest edit script, and lines
+ *  shared at the start and end of each half are matched before searching, so the time taken grows with the
+ *  number of lines changed, and the memory used with the number of lines. */
+class LineDiff {
+
+    /** A file split into lines, each including its end of line. The last line may have no end of line. */
+    static class Lines {
+        final byte[] bytes;
+
+        /** The offset in bytes of the start of each line, followed by the length of bytes. */
+        final int[] starts;
+
+        /** The number of each line; equal lines have equal numbers (see split). */
+        final int[] ids;
+
+        Lines(byte[] bytes) {
+            this.bytes = bytes;
+            int count = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n' || i == bytes.length - 1) {
+                    count += 1;
+                }
+            }
+            starts = new int[count + 1];
+            int line = 1;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n' || i == bytes.length - 1) {
+                    starts[line] = i + 1;
+                    line += 1;
+                }
+            }
+            ids = new int[count];
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        /** Writes the lines FROM to TO, not including TO, to OUT. */
+        void write(OutputStream out, int from, int to) throws IOException {
+            out.write(bytes, starts[from], starts[to] - starts[from]);
+        }
+
+        /** Returns true if the lines FROM to TO of this file are the lines OTHER_FROM to OTHER_TO of OTHER. */
+        boolean same(int from, int to, Lines other, int other_from, int other_to) {
+            return Arrays.equals(ids, from, to, other.ids, other_from, other_to);
+        }
+    }
+
+    /** Returns FILES split into lines, with lines numbered so that lines with the same bytes, in any of the files,
+     *  have the same number. Lines are numbered through an open addressing hash table of line numbers, so numbering
+     *  allocates nothing per line. */
+    static Lines[] split(byte[]... files) {
+        Lines[] lines = new Lines[files.length];
+        int total = 0;
+        for (int f = 0; f < files.length; f++) {
+            lines[f] = new Lines(files[f]);
+            total += lines[f].size();
+        }
+        int[] table = new int[Integer.highestOneBit(Math.max(total, 1)) * 4];
+        int mask = table.length - 1;
+        int shift = Integer.numberOfLeadingZeros(mask);
+        // The first line with each number, as the file and line where it was found, and the hash of its bytes
+        int[] first_file = new int[total];
+        int[] first_line = new int[total];
+        int[] first_hash = new int[total];
+        int numbers = 0;
+        for (int f = 0; f < files.length; f++) {
+            Lines file = lines[f];
+            for (int i = 0; i < file.size(); i++) {
+                int start = file.starts[i];
+                int end = file.starts[i + 1];
+                int hash = 1;
+                for (int k = start; k < end; k++) {
+                    hash = 31 * hash + file.bytes[k];
+                }
+                // Lines often differ in only a few bytes, so the hash is spread over the table by a multiplication
+                int slot = (hash * 0x9E3779B9) >>> shift;
+                while (true) {
+                    int number = table[slot] - 1;
+                    if (number < 0) {
+                        table[slot] = numbers + 1;
+                        first_file[numbers] = f;
+                        first_line[numbers] = i;
+                        first_hash[numbers] = hash;
+                        file.ids[i] = numbers;
+                        numbers += 1;
+                        break;
+                    }
+                    Lines other = lines[first_file[number]];
+                    int other_line = first_line[number];
+                    if (first_hash[number] == hash && Arrays.equals(file.bytes, start, end,
+                            other.bytes, other.starts[other_line], other.starts[other_line + 1])) {
+                        file.ids[i] = number;
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+            }
+        }
+        return lines;
+    }
+
+    /** A run of LENGTH lines that are the same in two files, starting at line A of the first and line B of the second. */
+    static class Block {
+        final int a;
+        final int b;
+        final int length;
+
+        Block(int a, int b, int length) {
+            this.a = a;
+            this.b = b;
+            this.length = length;
+        }
+    }
+
+    /** Returns the lines A and B have in common, as the blocks of a longest common subsequence of their lines,
+     *  in order. Lines of A outside these blocks were removed, and lines of B outside them were added. */
+    static List<Block> matches(Lines a, Lines b) {
+        ArrayList<Block> blocks = new ArrayList<>();
+        compare(a.ids, 0, a.size(), b.ids, 0, b.size(), blocks);
+        return blocks;
+    }
+
+    /** Adds to BLOCKS the matching lines of A from A_START to A_END and of B from B_START to B_END. */
+    private static void compare(int[] a, int a_start, int a_end, int[] b, int b_start, int b_end, List<Block> blocks) {
+        int prefix = 0;
+        while (a_start + prefix < a_end && b_start + prefix < b_end && a[a_start + prefix] == b[b_start + prefix]) {
+            prefix += 1;
+        }
+        add(blocks, a_start, b_start, prefix);
+        a_start += prefix;
+        b_start += prefix;
+        int suffix = 0;
+        while (a_start < a_end - suffix && b_start < b_end - suffix && a[a_end - suffix - 1] == b[b_end - suffix - 1]) {
+            suffix += 1;
+        }
+        a_end -= suffix;
+        b_end -= suffix;
+
+        if (a_start < a_end && b_start < b_end) {
+            long split = bisect(a, a_start, a_end, b, b_start, b_end);
+            if (split >= 0) {
+                int x = (int) (split >>> 32);
+                int y = (int) split;
+                compare(a, a_start, a_start + x, b, b_start, b_start + y, blocks);
+                compare(a, a_start + x, a_end, b, b_start + y, b_end, blocks);
+            }
+        }
+        add(blocks, a_end, b_end, suffix);
+    }
+
+    /** Adds a block to BLOCKS, joining it to the last block if it follows on from it. */
+    private static void add(List<Block> blocks, int a, int b, int length) {
+        if (length == 0) {
+            return;
+        }
+        Block last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+        if (last != null && last.a + last.length == a && last.b + last.length == b) {
+            blocks.set(blocks.size() - 1, new Block(last.a, last.b, last.length + length));
+        } else {
+            blocks.add(new Block(a, b, length));
+        }
+    }
+
+    /** Finds the middle of a shortest edit script from the lines of A from A_START to A_END to the lines of B from
+     *  B_START to B_END, by following the furthest reaching paths forwards from the start and backwards from the
+     *  end until they overlap. Returns the point, relative to the starts, as x in the high and y in the low 32 bits,
+     *  or -1 if the lines have nothing in common. The first and last lines of A and B must differ. */
+    private static long bisect(int[] a, int a_start, int a_end, int[] b, int b_start, int b_end) {
+        int n = a_end - a_start;
+        int m = b_end - b_start;
+        int max_d = (n + m + 1) / 2;
+        int offset = max_d;
+        int length = 2 * max_d + 2;
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        // If the difference in length is odd, the paths can only first overlap on a forward step
+        boolean check_forward = (delta & 1) != 0;
+        // Diagonals that ran off the edit graph are no longer followed
+        int forward_start = 0;
+        int forward_end = 0;
+        int backward_start = 0;
+        int backward_end = 0;
+        for (int d = 0; d < max_d; d++) {
+            for (int k = -d + forward_start; k <= d - forward_end; k += 2) {
+                int i = offset + k;
+                int x = k == -d || (k != d && forward[i - 1] < forward[i + 1]) ? forward[i + 1] : forward[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[a_start + x] == b[b_start + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[i] = x;
+                if (x > n) {
+                    forward_end += 2;
+                } else if (y > m) {
+                    forward_start += 2;
+                } else if (check_forward) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < length && backward[j] != -1 && x >= n - backward[j]) {
+                        return (long) x << 32 | y;
+                    }
+                }
+            }
+            for (int k = -d + backward_start; k <= d - backward_end; k += 2) {
+                int i = offset + k;
+                int x = k == -d || (k != d && backward[i - 1] < backward[i + 1]) ? backward[i + 1] : backward[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[a_end - x - 1] == b[b_end - y - 1]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[i] = x;
+                if (x > n) {
+                    backward_end += 2;
+                } else if (y > m) {
+                    backward_start += 2;
+                } else if (!check_forward) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < length && forward[j] != -1) {
+                        int forward_x = forward[j];
+                        int forward_y = forward_x - (j - offset);
+                        if (forward_x >= n - x) {
+                            return (long) forward_x << 32 | forward_y;
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,110 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Merges two versions of a file changed from a common base line by line, in the style of diff3.
+ *
+ *  Both versions are compared with the base (see LineDiff), and the lines that are unchanged in both split the
+ *  files into stable regions, which are copied, and the changed regions between them. A region changed in only one
+ *  version, or changed the same way in both, takes that change; a region changed in different ways in both is a
+ *  conflict, and is written as our lines and their lines between conflict markers. So edits to different parts of
+ *  a file are merged without conflict, however close together the parts are, as long as they do not touch. */
+class LineMerge {
+
+    private static final byte[] START = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MIDDLE = "=======\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] END = ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Writes to OUT the merge of OURS and THEIRS, two versions of BASE, and returns the number of conflicts. */
+    static int merge(byte[] base, byte[] ours, byte[] theirs, OutputStream out) throws IOException {
+        LineDiff.Lines[] lines = LineDiff.split(base, ours, theirs);
+        LineDiff.Lines base_lines = lines[0];
+        LineDiff.Lines our_lines = lines[1];
+        LineDiff.Lines their_lines = lines[2];
+
+        int conflicts = 0;
+        int b = 0;
+        int o = 0;
+        int t = 0;
+        for (Stable stable : stable_regions(LineDiff.matches(base_lines, our_lines), LineDiff.matches(base_lines, their_lines),
+                base_lines.size(), our_lines.size(), their_lines.size())) {
+            if (b < stable.base || o < stable.ours || t < stable.theirs) {
+                boolean ours_changed = !base_lines.same(b, stable.base, our_lines, o, stable.ours);
+                boolean theirs_changed = !base_lines.same(b, stable.base, their_lines, t, stable.theirs);
+                if (!theirs_changed) {
+                    our_lines.write(out, o, stable.ours);
+                } else if (!ours_changed || our_lines.same(o, stable.ours, their_lines, t, stable.theirs)) {
+                    their_lines.write(out, t, stable.theirs);
+                } else {
+                    out.write(START);
+                    our_lines.write(out, o, stable.ours);
+                    out.write(MIDDLE);
+                    their_lines.write(out, t, stable.theirs);
+                    out.write(END);
+                    conflicts += 1;
+                }
+            }
+            our_lines.write(out, stable.ours, stable.ours + stable.length);
+            b = stable.base + stable.length;
+            o = stable.ours + stable.length;
+            t = stable.theirs + stable.length;
+        }
+        return conflicts;
+    }
+
+    /** Writes to OUT the whole of OURS and THEIRS as one conflict, as merge does for a file deleted in one version
+     *  and changed in the other, or added in both with different contents. */
+    static void conflict(byte[] ours, byte[] theirs, OutputStream out) throws IOException {
+        out.write(START);
+        out.write(ours);
+        out.write(MIDDLE);
+        out.write(theirs);
+        out.write(END);
+    }
+
+    /** LENGTH lines that are the same in all three versions, from line BASE of the base, OURS of ours and THEIRS of
+     *  theirs. */
+    private static class Stable {
+        final int base;
+        final int ours;
+        final int theirs;
+        final int length;
+
+        Stable(int base, int ours, int theirs, int length) {
+            this.base = base;
+            this.ours = ours;
+            this.theirs = theirs;
+            this.length = length;
+        }
+    }
+
+    /** Returns the regions of the base whose lines are matched in both OURS and THEIRS, the blocks of base lines
+     *  matched in each version, in order and followed by an empty region at the end of all three versions. */
+    private static List<Stable> stable_regions(List<LineDiff.Block> ours, List<LineDiff.Block> theirs,
+                                               int base_size, int ours_size, int theirs_size) {
+        ArrayList<Stable> regions = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < ours.size() && j < theirs.size()) {
+            LineDiff.Block our_block = ours.get(i);
+            LineDiff.Block their_block = theirs.get(j);
+            int start = Math.max(our_block.a, their_block.a);
+            int end = Math.min(our_block.a + our_block.length, their_block.a + their_block.length);
+            if (start < end) {
+                regions.add(new Stable(start, our_block.b + start - our_block.a, their_block.b + start - their_block.a,
+                        end - start));
+            }
+            if (our_block.a + our_block.length < their_block.a + their_block.length) {
+                i += 1;
+            } else {
+                j += 1;
+            }
+        }
+        regions.add(new Stable(base_size, ours_size, theirs_size, 0));
+        return regions;
+    }
+}
@@ -0,0 +1,271 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TimeZone;
+
+/** Writes the entries of log and global-log, from the Commit Graph alone.
+ *
+ *  Entries are written into one large buffer, which is written to the output only when it is full and at the end,
+ *  rather than line by line. A format is parsed once into its parts, and dates are written without a Formatter:
+ *  the date and time zone parts of a date are formatted once per day and offset from UTC and then looked up, and
+ *  only the time of day is written for each entry.
+ *
+ *  With no format, each entry is the usual
+ *      ===
+ *      commit [commit ID]
+ *      Merge: [parent] [second parent]     (for merge commits only)
+ *      Date: [date]
+ *      [message]
+ *      (blank line)
+ *  A format is written once per entry, followed by a new line, as git log --format does, with
+ *      %H  the commit ID               %h  its first 7 digits
+ *      %P  the parent IDs              %p  their first 7 digits
+ *      %ad the date                    %s  the first line of the message
+ *      %B  the whole message           %n  a new line
+ *      %%  a percent sign
+ *  and any other text written as it is. */
+class LogWriter {
+
+    /** The format of log --oneline. */
+    static final String ONELINE = "%h %s";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int SHORT_ID_LENGTH = 7;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int used;
+
+    /** The parts of the format: for each, either a placeholder letter ('d' for %ad), or 0 for text. Null for the
+     *  usual entry. */
+    private final char[] codes;
+    private final byte[][] texts;
+
+    /** Largest number of entries written, or -1 for no limit, and the number written so far. */
+    private final int limit;
+    private int written;
+
+    /** The date before and after the time of day, for each day and offset from UTC seen (see date). */
+    private final TimeZone zone = TimeZone.getDefault();
+    private final HashMap<Long, byte[][]> dates = new HashMap<>();
+
+    /** Writes to OUT entries in FORMAT, or the usual entries if it is null, and no more than LIMIT of them, or any
+     *  number if it is -1. */
+    LogWriter(OutputStream out, String format, int limit) {
+        this.out = out;
+        this.limit = limit;
+        if (format == null) {
+            codes = null;
+            texts = null;
+            return;
+        }
+        ArrayList<Character> part_codes = new ArrayList<>();
+        ArrayList<byte[]> part_texts = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            char next = i + 1 < format.length() ? format.charAt(i + 1) : 0;
+            char code = 0;
+            if (c != '%') {
+                text.append(c);
+                continue;
+            } else if (next == 'n') {
+                text.append('\n');
+            } else if (next == '%') {
+                text.append('%');
+            } else if (next == 'a' && i + 2 < format.length() && format.charAt(i + 2) == 'd') {
+                code = 'd';
+                i += 1;
+            } else if ("HhPpsB".indexOf(next) >= 0) {
+                code = next;
+            } else {
+                text.append(c);
+                continue;
+            }
+            i += 1;
+            if (code != 0) {
+                if (text.length() > 0) {
+                    part_codes.add((char) 0);
+                    part_texts.add(text.toString().getBytes(StandardCharsets.UTF_8));
+                    text.setLength(0);
+                }
+                part_codes.add(code);
+                part_texts.add(null);
+            }
+        }
+        part_codes.add((char) 0);
+        part_texts.add(text.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+        codes = new char[part_codes.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = part_codes.get(i);
+        }
+        texts = part_texts.toArray(new byte[0][]);
+    }
+
+    /** Returns a writer to standard output for the options of log or global-log:
+     *      [--oneline] [-n count] [--format=format]
+     *  or null if OPTIONS are not valid. Later options take the place of earlier ones. */
+    static LogWriter parse(List<String> options) {
+        String format = null;
+        int limit = -1;
+        for (int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+            if (option.equals("--oneline")) {
+                format = ONELINE;
+            } else if (option.startsWith("--format=")) {
+                format = option.substring("--format=".length());
+            } else if (option.equals("-n") && i + 1 < options.size()) {
+                i += 1;
+                try {
+                    limit = Integer.parseInt(options.get(i));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (limit < 0) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        return new LogWriter(System.out, format, limit);
+    }
+
+    /** Returns true once as many entries as the limit have been written, so that no more need be found. */
+    boolean done() {
+        return limit >= 0 && written >= limit;
+    }
+
+    /** Writes the entry of the commit at index I of GRAPH. */
+    void write(CommitGraph graph, int i) throws IOException {
+        written += 1;
+        if (codes == null) {
+            ascii("===\ncommit ");
+            ascii(graph.ids[i], Utils.UID_LENGTH);
+            if (graph.second_parents[i] != CommitGraph.NONE) {
+                ascii("\nMerge: ");
+                ascii(graph.ids[graph.parents[i]], SHORT_ID_LENGTH);
+                ascii(" ");
+                ascii(graph.ids[graph.second_parents[i]], SHORT_ID_LENGTH);
+            }
+            ascii("\nDate: ");
+            date(graph.timestamps[i]);
+            ascii("\n");
+            bytes(graph.messages[i].getBytes(StandardCharsets.UTF_8));
+            ascii("\n\n");
+            return;
+        }
+        for (int p = 0; p < codes.length; p++) {
+            switch (codes[p]) {
+                case 'H':
+                case 'h':
+                    ascii(graph.ids[i], codes[p] == 'H' ? Utils.UID_LENGTH : SHORT_ID_LENGTH);
+                    break;
+                case 'P':
+                case 'p': {
+                    int length = codes[p] == 'P' ? Utils.UID_LENGTH : SHORT_ID_LENGTH;
+                    if (graph.parents[i] != CommitGraph.NONE) {
+                        ascii(graph.ids[graph.parents[i]], length);
+                    }
+                    if (graph.second_parents[i] != CommitGraph.NONE) {
+                        ascii(" ");
+                        ascii(graph.ids[graph.second_parents[i]], length);
+                    }
+                    break;
+                }
+                case 'd':
+                    date(graph.timestamps[i]);
+                    break;
+                case 's': {
+                    String message = graph.messages[i];
+                    int end = message.indexOf('\n');
+                    bytes((end < 0 ? message : message.substring(0, end)).getBytes(StandardCharsets.UTF_8));
+                    break;
+                }
+                case 'B':
+                    bytes(graph.messages[i].getBytes(StandardCharsets.UTF_8));
+                    break;
+                default:
+                    bytes(texts[p]);
+            }
+        }
+    }
+
+    /** Writes out all that is left in the buffer. */
+    void flush() throws IOException {
+        out.write(buffer, 0, used);
+        used = 0;
+        out.flush();
+    }
+
+    /** Writes TIMESTAMP as log has always shown dates, String.format("%1$ta %1$tb %1$td %1$tT %1$tY %1$tz"). */
+    private void date(long timestamp) throws IOException {
+        int offset = zone.getOffset(timestamp);
+        long local = timestamp + offset;
+        long day = Math.floorDiv(local, DAY);
+        // Offsets from UTC are whole minutes, and less than a day
+        long key = day * 4096 + offset / 60000 + 2048;
+        byte[][] parts = dates.get(key);
+        if (parts == null) {
+            Date date = new Date(timestamp);
+            parts = new byte[][] {
+                    String.format("%1$ta %1$tb %1$td ", date).getBytes(StandardCharsets.UTF_8),
+                    String.format(" %1$tY %1$tz", date).getBytes(StandardCharsets.UTF_8)};
+            dates.put(key, parts);
+        }
+        int seconds = (int) (Math.floorMod(local, DAY) / 1000);
+        bytes(parts[0]);
+        ensure(8);
+        digits(seconds / 3600);
+        buffer[used++] = ':';
+        digits(seconds / 60 % 60);
+        buffer[used++] = ':';
+        digits(seconds % 60);
+        bytes(parts[1]);
+    }
+
+    private void digits(int two_digits) {
+        buffer[used++] = (byte) ('0' + two_digits / 10);
+        buffer[used++] = (byte) ('0' + two_digits % 10);
+    }
+
+    /** Writes TEXT, which holds only ASCII characters. */
+    private void ascii(String text) throws IOException {
+        ascii(text, text.length());
+    }
+
+    /** Writes the first LENGTH characters of TEXT, which holds only ASCII characters, or all of them if fewer. */
+    private void ascii(String text, int length) throws IOException {
+        length = Math.min(length, text.length());
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer[used++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void bytes(byte[] bytes) throws IOException {
+        if (bytes.length > BUFFER_SIZE) {
+            flush();
+            out.write(bytes);
+            return;
+        }
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, used, bytes.length);
+        used += bytes.length;
+    }
+
+    /** Makes room for LENGTH bytes in the buffer, which must be no more than its size. */
+    private void ensure(int length) throws IOException {
+        if (used + length > BUFFER_SIZE) {
+            out.write(buffer, 0, used);
+            used = 0;
+        }
+    }
+}
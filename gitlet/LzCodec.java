@@ -0,0 +1,286 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** A small LZ77 compressor in the style of LZ4, trading compression ratio for speed.
+ *
+ *  Data is cut into blocks of BLOCK_SIZE bytes, each compressed on its own:
+ *      [int raw length][int compressed length][compressed bytes]
+ *  and the stream ends with a raw length of 0.
+ *
+ *  A compressed block is a list of sequences. Each sequence copies a run of literal bytes and then
+ *  repeats MIN_MATCH or more bytes found OFFSET bytes back in the output:
+ *      [token][extra literal length][literals][2 byte offset][extra match length]
+ *  The high 4 bits of the token hold the literal length and the low 4 bits the match length minus MIN_MATCH.
+ *  A nibble of 15 means the length continues in the following bytes, each adding up to 255.
+ *  The last sequence of a block holds only literals. Matches are found through a hash table of the
+ *  last position at which each 4 byte value was seen, so each input byte is looked at about once. */
+class LzCodec {
+
+    static final int BLOCK_SIZE = 1 << 16;
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int HASH_BITS = 12;
+
+    /** Compresses the first LENGTH bytes of SRC into DST, which must hold at least max_compressed_length(LENGTH) bytes.
+     *  Returns the number of bytes written to DST. */
+    static int compress(byte[] src, int length, byte[] dst) {
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int anchor = 0;
+        int i = 0;
+        int o = 0;
+        while (i + MIN_MATCH <= length) {
+            int sequence = read_int(src, i);
+            int h = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = i;
+            if (ref >= 0 && i - ref <= MAX_OFFSET && read_int(src, ref) == sequence) {
+                int match = MIN_MATCH;
+                while (i + match < length && src[ref + match] == src[i + match]) {
+                    match += 1;
+                }
+                o = write_sequence(dst, o, src, anchor, i - anchor, i - ref, match);
+                i += match;
+                anchor = i;
+            } else {
+                i += 1;
+            }
+        }
+        return write_sequence(dst, o, src, anchor, length - anchor, 0, 0);
+    }
+
+    /** Decompresses the first LENGTH bytes of SRC into the first RAW_LENGTH bytes of DST. */
+    static void decompress(byte[] src, int length, byte[] dst, int raw_length) throws IOException {
+        int i = 0;
+        int o = 0;
+        try {
+            while (true) {
+                int token = src[i++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[i++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, i, dst, o, literals);
+                i += literals;
+                o += literals;
+                if (i >= length) {
+                    break;
+                }
+                int offset = (src[i] & 0xFF) | (src[i + 1] & 0xFF) << 8;
+                i += 2;
+                int match = token & 15;
+                if (match == 15) {
+                    int b;
+                    do {
+                        b = src[i++] & 0xFF;
+                        match += b;
+                    } while (b == 255);
+                }
+                match += MIN_MATCH;
+                int ref = o - offset;
+                if (offset >= match) {
+                    System.arraycopy(dst, ref, dst, o, match);
+                    o += match;
+                } else {
+                    // Byte by byte, since the match overlaps the bytes it is producing
+                    for (int k = 0; k < match; k++) {
+                        dst[o++] = dst[ref++];
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("corrupt compressed block");
+        }
+        if (o != raw_length) {
+            throw new IOException("corrupt compressed block");
+        }
+    }
+
+    /** Largest number of bytes compress can produce from LENGTH bytes. */
+    static int max_compressed_length(int length) {
+        return length + length / 255 + 16;
+    }
+
+    private static int write_sequence(byte[] dst, int o, byte[] src, int start, int literals, int offset, int match) {
+        int extra_match = match - MIN_MATCH;
+        int token = Math.min(literals, 15) << 4 | (match == 0 ? 0 : Math.min(extra_match, 15));
+        dst[o++] = (byte) token;
+        o = write_length(dst, o, literals);
+        System.arraycopy(src, start, dst, o, literals);
+        o += literals;
+        if (match != 0) {
+            dst[o++] = (byte) offset;
+            dst[o++] = (byte) (offset >>> 8);
+            o = write_length(dst, o, extra_match);
+        }
+        return o;
+    }
+
+    /** Writes the part of LENGTH that does not fit in a token nibble. */
+    private static int write_length(byte[] dst, int o, int length) {
+        if (length >= 15) {
+            int rest = length - 15;
+            while (rest >= 255) {
+                dst[o++] = (byte) 255;
+                rest -= 255;
+            }
+            dst[o++] = (byte) rest;
+        }
+        return o;
+    }
+
+    private static int read_int(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+
+    /** Compresses everything written to it into blocks on the underlying stream. */
+    static class Output extends FilterOutputStream {
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] compressed = new byte[max_compressed_length(BLOCK_SIZE)];
+        private int size;
+
+        Output(OutputStream out) {
+            super(new DataOutputStream(out));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (size == BLOCK_SIZE) {
+                write_block();
+            }
+            block[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (size == BLOCK_SIZE) {
+                    write_block();
+                }
+                int n = Math.min(len, BLOCK_SIZE - size);
+                System.arraycopy(b, off, block, size, n);
+                size += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void write_block() throws IOException {
+            DataOutputStream data = (DataOutputStream) out;
+            int length = compress(block, size, compressed);
+            data.writeInt(size);
+            data.writeInt(length);
+            data.write(compressed, 0, length);
+            size = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (size > 0) {
+                write_block();
+            }
+            ((DataOutputStream) out).writeInt(0);
+            super.close();
+        }
+    }
+
+    /** Reads the blocks written by Output and returns their decompressed bytes. */
+    static class Input extends FilterInputStream {
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] compressed = new byte[max_compressed_length(BLOCK_SIZE)];
+        private int size;
+        private int position;
+        private boolean finished;
+
+        Input(InputStream in) {
+            super(new DataInputStream(in));
+        }
+
+        /** Reads the next block, returning false at the end of the stream. */
+        private boolean next_block() throws IOException {
+            if (finished) {
+                return false;
+            }
+            DataInputStream data = (DataInputStream) in;
+            int raw_length;
+            try {
+                raw_length = data.readInt();
+            } catch (EOFException e) {
+                throw new IOException("compressed stream ended early");
+            }
+            if (raw_length == 0) {
+                finished = true;
+                return false;
+            }
+            if (raw_length < 0 || raw_length > BLOCK_SIZE) {
+                throw new IOException("corrupt compressed stream");
+            }
+            int length = data.readInt();
+            if (length < 0 || length > compressed.length) {
+                throw new IOException("corrupt compressed stream");
+            }
+            data.readFully(compressed, 0, length);
+            decompress(compressed, length, block, raw_length);
+            size = raw_length;
+            position = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == size && !next_block()) {
+                return -1;
+            }
+            return block[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == size && !next_block()) {
+                return -1;
+            }
+            int n = Math.min(len, size - position);
+            System.arraycopy(block, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && (position < size || next_block())) {
+                int step = (int) Math.min(n - skipped, size - position);
+                position += step;
+                skipped += step;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return size - position;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
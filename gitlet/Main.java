@@ -1,5 +1,8 @@
 package gitlet;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static gitlet.Repository.CWD;
 import static gitlet.Repository.GITLET_DIR;
 import static gitlet.Utils.join;
@@ -22,6 +25,9 @@ public class Main {
             return;
         }
         String firstArg = args[0];
+        if (GITLET_DIR.exists()){
+            Repository.migrate();
+        }
         switch(firstArg) {
             case "init":
                 if (args.length != 1){
@@ -36,11 +42,11 @@ public class Main {
                     System.out.println("Not in an initialised Gitlet directory.");
                     return;
                 }
-                if (args.length != 2){
+                if (args.length < 2){
                     System.out.println("Incorrect operands.");
                     return;
                 }
-                Repository.add(args[1]);
+                Repository.add(Arrays.asList(args).subList(1, args.length));
                 break;
 
             case "commit":
@@ -76,11 +82,19 @@ public class Main {
                     System.out.println("Not in an initialised Gitlet directory.");
                     return;
                 }
-                if (args.length != 1){
+                List<String> log_options = Arrays.asList(args).subList(1, args.length);
+                int paths_start = log_options.indexOf("--");
+                LogWriter log_writer = LogWriter.parse(paths_start < 0 ? log_options : log_options.subList(0, paths_start));
+                if (log_writer == null || (paths_start >= 0 && paths_start == log_options.size() - 1)){
                     System.out.println("Incorrect operands.");
                     return;
                 }
-                Repository.log();
+                if (paths_start < 0){
+                    Repository.log(log_writer);
+                }
+                else{
+                    Repository.log(log_writer, log_options.subList(paths_start + 1, log_options.size()));
+                }
                 break;
 
             case "global-log":
@@ -88,11 +102,12 @@ public class Main {
                     System.out.println("Not in an initialised Gitlet directory.");
                     return;
                 }
-                if (args.length != 1){
+                LogWriter global_log_writer = LogWriter.parse(Arrays.asList(args).subList(1, args.length));
+                if (global_log_writer == null){
                     System.out.println("Incorrect operands.");
                     return;
                 }
-                Repository.global_log();
+                Repository.global_log(global_log_writer);
                 break;
 
             case "find":
@@ -100,11 +115,18 @@ public class Main {
                     System.out.println("Not in an initialised Gitlet directory.");
                     return;
                 }
-                if (args.length != 2){
+                if (args.length == 2){
+                    Repository.find(args[1]);
+                }
+                else if (args.length == 3 && args[1].equals("--contains")){
+                    Repository.find_containing(args[2]);
+                }
+                else if (args.length == 3 && args[1].equals("--regex")){
+                    Repository.find_matching(args[2]);
+                }
+                else{
                     System.out.println("Incorrect operands.");
-                    return;
                 }
-                Repository.find(args[1]);
                 break;
 
             case "status":
@@ -138,6 +160,25 @@ public class Main {
                 }
                 break;
 
+            case "diff":
+                if (!GITLET_DIR.exists()){
+                    System.out.println("Not in an initialised Gitlet directory.");
+                    return;
+                }
+                if (args.length == 1){
+                    Repository.diff();
+                }
+                else if (args.length == 2 && args[1].equals("--staged")){
+                    Repository.diff_staged();
+                }
+                else if (args.length == 3){
+                    Repository.diff(args[1], args[2]);
+                }
+                else{
+                    System.out.println("Incorrect operands.");
+                }
+                break;
+
             case "branch":
                 if (!GITLET_DIR.exists()){
                     System.out.println("Not in an initialised Gitlet directory.");
@@ -186,6 +227,46 @@ public class Main {
                 Repository.merge(args[1]);
                 break;
 
+            case "count-objects":
+                if (!GITLET_DIR.exists()){
+                    System.out.println("Not in an initialised Gitlet directory.");
+                    return;
+                }
+                if (args.length != 1){
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+                Repository.count_objects();
+                break;
+
+            case "repack":
+                if (!GITLET_DIR.exists()){
+                    System.out.println("Not in an initialised Gitlet directory.");
+                    return;
+                }
+                if (args.length != 1){
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+                Repository.repack();
+                break;
+
+            case "daemon":
+                if (!GITLET_DIR.exists()){
+                    System.out.println("Not in an initialised Gitlet directory.");
+                    return;
+                }
+                if (args.length == 1){
+                    Daemon.serve();
+                }
+                else if (args.length == 2 && args[1].equals("--stop")){
+                    Daemon.stop();
+                }
+                else{
+                    System.out.println("Incorrect operands.");
+                }
+                break;
+
             default:
                 System.out.println("No command with that name exists.");
         }
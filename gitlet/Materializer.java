@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.join;
+
+/** Writes many blobs into the working directory at once, for checkout and reset.
+ *
+ *  The blobs are read, decompressed and written on the worker threads of Parallel (see -Dgitlet.threads), each
+ *  to a temporary file in a new directory in the .gitlet folder. Only when every blob has been written does
+ *  finish move the temporary files into place, one after another, so a blob that cannot be read or written
+ *  leaves the working directory untouched. Only this prepare phase is all or nothing: finish does not undo
+ *  the moves already made if one of them fails, nor does it bring back the files checkout or reset deleted
+ *  after prepare, so such a failure leaves some files of each version in the working directory.
+ *
+ *  The temporary files are spread over subdirectories of TEMPS_PER_DIRECTORY files, so that threads writing
+ *  different files rarely contend for the same directory. */
+class Materializer {
+
+    /** The files to write, and the blob ID of the contents of each. */
+    private final List<File> files;
+    private final List<String> blobIDs;
+
+    /** The temporary file each blob was written to by prepare, or null if it was not written. */
+    private final File[] temps;
+
+    /** The directory holding the temporary files. */
+    private File temp_dir;
+
+    /** Number of temporary files in each subdirectory of temp_dir. */
+    private static final int TEMPS_PER_DIRECTORY = 256;
+
+    /** The hash of the contents written to each file, once prepared. */
+    private List<String> hashes;
+
+    Materializer(List<String> blobIDs, List<File> files) {
+        this.blobIDs = blobIDs;
+        this.files = files;
+        this.temps = new File[files.size()];
+    }
+
+    /** Writes every blob to its temporary file. If some cannot be written, the temporary files are deleted and the
+     *  failure of the first of them, in the order the files were given, is thrown. */
+    void prepare() {
+        ArrayList<Integer> indices = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            indices.add(i);
+        }
+        try {
+            temp_dir = Files.createTempDirectory(GITLET_DIR.toPath(), "checkout").toFile();
+            hashes = Parallel.map(indices, i -> {
+                File temp = join(temp_dir, Integer.toString(i / TEMPS_PER_DIRECTORY), Integer.toString(i));
+                temps[i] = temp;
+                return ObjectStore.write_to(blobIDs.get(i), temp);
+            });
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } catch (RuntimeException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    /** Moves every prepared file into place, creating the directories it needs, and returns the hashes of the
+     *  contents written, in the order the files were given. If a move fails, the files already moved stay in
+     *  place, the others are discarded, and the failure is thrown. */
+    List<String> finish() {
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                file.getParentFile().mkdirs();
+                Files.move(temps[i].toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                temps[i] = null;
+            }
+        } catch (IOException e) {
+            discard();
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        discard();
+        return hashes;
+    }
+
+    /** Deletes the temporary files not yet moved into place, and their directory. */
+    private void discard() {
+        for (int i = 0; i < temps.length; i++) {
+            if (temps[i] != null) {
+                temps[i].delete();
+                temps[i] = null;
+            }
+        }
+        File[] subdirectories = temp_dir.listFiles();
+        if (subdirectories != null) {
+            for (File subdirectory : subdirectories) {
+                subdirectory.delete();
+            }
+        }
+        temp_dir.delete();
+    }
+}
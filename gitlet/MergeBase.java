@@ -0,0 +1,167 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** Finds the split point (merge base) of two commits using the Commit Graph.
+ *
+ *  Both heads are painted with their own colour and the colours are pushed down to parents,
+ *  always expanding the commit with the highest generation number first. A commit's generation is
+ *  larger than that of all its ancestors, so by the time a commit is taken out of the queue every
+ *  child that could paint it has already been expanded and its colours are final. The first commit
+ *  found carrying both colours is therefore a latest common ancestor, and the search stops there;
+ *  only the commits between the heads and the split point are ever visited.
+ *
+ *  Commits are handled by their int index in the Commit Graph rather than by their String ID.
+ *  The search itself follows the number of commits between the heads and the split point, but merge
+ *  still reads the whole Commit Graph file to run it, which takes time in proportion to the length of
+ *  history; the two heads are found from the newest commit back (see CommitGraph.recent_index_of),
+ *  without building a map of every commit ID. */
+class MergeBase {
+
+    /** Colour of commits reachable from the first commit. */
+    private static final byte FROM_FIRST = 1;
+
+    /** Colour of commits reachable from the second commit. */
+    private static final byte FROM_SECOND = 2;
+
+    private static final byte BOTH = FROM_FIRST | FROM_SECOND;
+
+    /** Returns the index of the split point of the commits at indices FIRST and SECOND,
+     *  or CommitGraph.NONE if they have no common ancestor. */
+    static int find(CommitGraph graph, int first, int second) {
+        if (first == second) {
+            return first;
+        }
+        Colours colours = new Colours();
+        Queue queue = new Queue(graph.generations);
+
+        colours.add(first, FROM_FIRST);
+        colours.add(second, FROM_SECOND);
+        queue.push(first);
+        queue.push(second);
+
+        while (!queue.isEmpty()) {
+            int commit = queue.pop();
+            byte colour = colours.get(commit);
+            if (colour == BOTH) {
+                return commit;
+            }
+            paint(graph.parents[commit], colour, colours, queue);
+            paint(graph.second_parents[commit], colour, colours, queue);
+        }
+        return CommitGraph.NONE;
+    }
+
+    /** Adds COLOUR to PARENT, queueing it only if it gained a colour it did not have. */
+    private static void paint(int parent, byte colour, Colours colours, Queue queue) {
+        if (parent != CommitGraph.NONE && colours.add(parent, colour)) {
+            queue.push(parent);
+        }
+    }
+
+    /** The colours of visited commits, in an open addressing hash table keyed by commit index.
+     *  Its size follows the number of commits visited rather than the length of history. */
+    private static class Colours {
+        private int[] keys = new int[64];
+        private byte[] values = new byte[64];
+        private int size;
+
+        Colours() {
+            Arrays.fill(keys, CommitGraph.NONE);
+        }
+
+        byte get(int commit) {
+            return values[slot(commit)];
+        }
+
+        /** Adds COLOUR to COMMIT. Returns true if COMMIT did not have that colour before. */
+        boolean add(int commit, byte colour) {
+            int i = slot(commit);
+            if (keys[i] == CommitGraph.NONE) {
+                keys[i] = commit;
+                size += 1;
+            } else if ((values[i] | colour) == values[i]) {
+                return false;
+            }
+            values[i] |= colour;
+            if (2 * size > keys.length) {
+                grow();
+            }
+            return true;
+        }
+
+        /** Returns the slot holding COMMIT, or the empty slot where it would go. */
+        private int slot(int commit) {
+            int mask = keys.length - 1;
+            int i = (commit * 0x9E3779B9) >>> 1 & mask;
+            while (keys[i] != CommitGraph.NONE && keys[i] != commit) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private void grow() {
+            int[] old_keys = keys;
+            byte[] old_values = values;
+            keys = new int[old_keys.length * 2];
+            values = new byte[old_keys.length * 2];
+            Arrays.fill(keys, CommitGraph.NONE);
+            for (int i = 0; i < old_keys.length; i++) {
+                if (old_keys[i] != CommitGraph.NONE) {
+                    int j = slot(old_keys[i]);
+                    keys[j] = old_keys[i];
+                    values[j] = old_values[i];
+                }
+            }
+        }
+    }
+
+    /** A binary max-heap of commit indices ordered by generation number.
+     *  A commit is pushed at most once per colour, so at most twice. */
+    private static class Queue {
+        private final int[] generations;
+        private int[] heap = new int[64];
+        private int size;
+
+        Queue(int[] generations) {
+            this.generations = generations;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(int commit) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size;
+            size += 1;
+            while (i > 0 && generations[heap[(i - 1) / 2]] < generations[commit]) {
+                heap[i] = heap[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heap[i] = commit;
+        }
+
+        int pop() {
+            int top = heap[0];
+            size -= 1;
+            int last = heap[size];
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && generations[heap[child + 1]] > generations[heap[child]]) {
+                    child += 1;
+                }
+                if (generations[heap[child]] <= generations[last]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The Message Index holds the message of every commit, with a trigram index over them, so that find can search
+ *  commit messages without reading any commit.
+ *
+ *  A trigram is three bytes in a row of the UTF-8 encoding of a message. For each trigram the index keeps the
+ *  numbers of the messages containing it, in order. A message containing some text contains every trigram of it,
+ *  so find only has to check the messages in all the lists of the trigrams of the text it looks for, which for
+ *  all but the most common words are a small part of the messages.
+ *
+ *  MessageIndex file: [4 byte MAGIC][int built length][int messages][int trigrams][int postings]
+ *                     [20 byte commit ID] per message
+ *                     [int offset of the message in the messages section] per message, then the end of the last
+ *                     [int trigram][int offset of its list in the postings section] per trigram, sorted by
+ *                     trigram, then the end of the last list
+ *                     [int message number] per posting, the list of each trigram in turn
+ *                     the UTF-8 bytes of the messages, one after another
+ *  followed by the commits made since it was built, each [20 byte commit ID][int length][message].
+ *
+ *  The file is memory mapped, so a search reads only the lists and messages it needs. As for the Commit Index,
+ *  making a commit appends to the end of the file, and once more than MAX_RECENT commits have been appended, the
+ *  whole index is built again. If the file does not exist, it is built from the Commit Graph. */
+class MessageIndex {
+
+    private static final byte[] MAGIC = {'g', 'm', 'i', 'x'};
+    private static final int HEADER_LENGTH = 20;
+    private static final int ID_LENGTH = Pack.ID_LENGTH;
+
+    /** Number of commits appended to the index before it is built again. */
+    static final int MAX_RECENT = 256;
+
+    private final File file;
+    private final ByteBuffer bytes;
+
+    /** Number of messages and trigrams in the built part of the index. */
+    private final int messages;
+    private final int trigrams;
+
+    /** Offsets in the file of each section of the built part, and of its end. */
+    private final int ids_at;
+    private final int offsets_at;
+    private final int trigrams_at;
+    private final int postings_at;
+    private final int messages_at;
+    private final int built_length;
+
+    /** Commits appended since the index was built. */
+    private final ArrayList<String> recent_ids = new ArrayList<>();
+    private final ArrayList<String> recent_messages = new ArrayList<>();
+
+    /** Offset in the file of the end of the last whole record appended, where the next one is written. */
+    private final int end;
+
+    /** Number of messages looked at by the last find. */
+    int checked;
+
+    private MessageIndex(File file, ByteBuffer bytes) {
+        this.file = file;
+        this.bytes = bytes;
+        byte[] magic = new byte[MAGIC.length];
+        bytes.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IllegalArgumentException("Not a message index: " + file);
+        }
+        built_length = bytes.getInt(4);
+        messages = bytes.getInt(8);
+        trigrams = bytes.getInt(12);
+        int postings = bytes.getInt(16);
+        ids_at = HEADER_LENGTH;
+        offsets_at = ids_at + messages * ID_LENGTH;
+        trigrams_at = offsets_at + (messages + 1) * 4;
+        postings_at = trigrams_at + (trigrams + 1) * 8;
+        messages_at = postings_at + postings * 4;
+
+        // A record cut short by a crash while appending was never part of a commit, so it is left out
+        int at = built_length;
+        while (at + ID_LENGTH + 4 <= bytes.capacity()) {
+            int length = bytes.getInt(at + ID_LENGTH);
+            if (length < 0 || at + ID_LENGTH + 4 + length > bytes.capacity()) {
+                break;
+            }
+            recent_ids.add(id(at));
+            recent_messages.add(string(at + ID_LENGTH + 4, length));
+            at += ID_LENGTH + 4 + length;
+        }
+        end = at;
+    }
+
+    /** Maps the MessageIndex file of the repository, building it first if it does not exist. */
+    static MessageIndex load() {
+        if (!MessageIndex_file.exists()) {
+            CommitGraph graph = CommitGraph.load();
+            write(MessageIndex_file, Arrays.asList(graph.ids).subList(0, graph.size),
+                    Arrays.asList(graph.messages).subList(0, graph.size));
+        }
+        return load(MessageIndex_file);
+    }
+
+    /** Maps the message index in FILE. */
+    static MessageIndex load(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new MessageIndex(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Builds an index of the commits with the given IDS and MESSAGES and writes it to FILE, replacing it. */
+    static void write(File file, List<String> ids, List<String> messages) {
+        byte[][] encoded = new byte[messages.size()][];
+        int message_bytes = 0;
+        TreeMap<Integer, ArrayList<Integer>> lists = new TreeMap<>();
+        int postings = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            encoded[i] = messages.get(i).getBytes(StandardCharsets.UTF_8);
+            message_bytes += encoded[i].length;
+            for (int trigram : trigrams(encoded[i])) {
+                lists.computeIfAbsent(trigram, t -> new ArrayList<>()).add(i);
+                postings += 1;
+            }
+        }
+        int length = HEADER_LENGTH + ids.size() * ID_LENGTH + (ids.size() + 1) * 4 + (lists.size() + 1) * 8
+                + postings * 4 + message_bytes;
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.put(MAGIC).putInt(length).putInt(ids.size()).putInt(lists.size()).putInt(postings);
+        for (String id : ids) {
+            out.put(Pack.to_bytes(id));
+        }
+        int offset = 0;
+        for (byte[] message : encoded) {
+            out.putInt(offset);
+            offset += message.length;
+        }
+        out.putInt(offset);
+        offset = 0;
+        for (Map.Entry<Integer, ArrayList<Integer>> trigram_list : lists.entrySet()) {
+            out.putInt(trigram_list.getKey()).putInt(offset);
+            offset += trigram_list.getValue().size();
+        }
+        out.putInt(0).putInt(offset);
+        for (ArrayList<Integer> list : lists.values()) {
+            for (int message : list) {
+                out.putInt(message);
+            }
+        }
+        for (byte[] message : encoded) {
+            out.put(message);
+        }
+        try {
+            File temp = File.createTempFile("index", ".tmp", file.getParentFile());
+            writeContents(temp, (Object) out.array());
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Adds the MESSAGE of a newly made commit with the given ID to the index, appending it, or building the whole
+     *  index again if MAX_RECENT commits have already been appended. */
+    void add(String commitID, String message) {
+        if (recent_ids.size() >= MAX_RECENT) {
+            ArrayList<String> ids = new ArrayList<>();
+            ArrayList<String> all_messages = new ArrayList<>();
+            for (int i = 0; i < messages; i++) {
+                ids.add(id(ids_at + i * ID_LENGTH));
+                all_messages.add(message(i));
+            }
+            ids.addAll(recent_ids);
+            all_messages.addAll(recent_messages);
+            ids.add(commitID);
+            all_messages.add(message);
+            write(file, ids, all_messages);
+            return;
+        }
+        byte[] encoded = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(ID_LENGTH + 4 + encoded.length);
+        record.put(Pack.to_bytes(commitID)).putInt(encoded.length).put(encoded);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            // A record cut short by a crash during an earlier add is written over
+            out.setLength(end);
+            out.seek(end);
+            out.write(record.array());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Returns the IDs, in order, of the commits whose message MATCHES. Every matching message must contain each
+     *  string in LITERALS, which are used to look up the messages to check; if there are none, every message is. */
+    List<String> find(List<String> literals, Predicate<String> matches) {
+        TreeSet<String> found = new TreeSet<>();
+        checked = 0;
+        for (int i : candidates(literals)) {
+            checked += 1;
+            if (matches.test(message(i))) {
+                found.add(id(ids_at + i * ID_LENGTH));
+            }
+        }
+        for (int i = 0; i < recent_ids.size(); i++) {
+            checked += 1;
+            if (matches.test(recent_messages.get(i))) {
+                found.add(recent_ids.get(i));
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    /** Returns the number of commits in the index. */
+    int size() {
+        return messages + recent_ids.size();
+    }
+
+    /** Returns the numbers of the built messages that contain every trigram of every string in LITERALS, in order,
+     *  by intersecting the lists of those trigrams, shortest first. */
+    private int[] candidates(List<String> literals) {
+        TreeSet<Integer> wanted = new TreeSet<>();
+        for (String literal : literals) {
+            for (int trigram : trigrams(literal.getBytes(StandardCharsets.UTF_8))) {
+                wanted.add(trigram);
+            }
+        }
+        if (wanted.isEmpty()) {
+            int[] all = new int[messages];
+            Arrays.setAll(all, i -> i);
+            return all;
+        }
+        // Each list as its start and end in the postings section, so that only the shortest is read whole
+        ArrayList<int[]> lists = new ArrayList<>();
+        for (int trigram : wanted) {
+            int[] list = postings(trigram);
+            if (list[0] == list[1]) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list[1] - list[0]));
+        int[] shortest = lists.get(0);
+        int[] result = new int[shortest[1] - shortest[0]];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = posting(shortest[0] + i);
+        }
+        for (int l = 1; l < lists.size() && result.length > 0; l++) {
+            int[] other = lists.get(l);
+            int kept = 0;
+            int low = other[0];
+            for (int message : result) {
+                low = search(low, other[1], message);
+                if (low < other[1] && posting(low) == message) {
+                    result[kept] = message;
+                    kept += 1;
+                }
+            }
+            result = Arrays.copyOf(result, kept);
+        }
+        return result;
+    }
+
+    /** Returns the start and end in the postings section of the list of the messages containing TRIGRAM, found by
+     *  binary search over the sorted trigrams, or an empty range if no message contains it. */
+    private int[] postings(int trigram) {
+        int low = 0;
+        int high = trigrams;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int found = bytes.getInt(trigrams_at + middle * 8);
+            if (found == trigram) {
+                return new int[] {bytes.getInt(trigrams_at + middle * 8 + 4),
+                        bytes.getInt(trigrams_at + (middle + 1) * 8 + 4)};
+            } else if (found < trigram) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return new int[] {0, 0};
+    }
+
+    /** Returns the first posting from LOW to HIGH that is not below MESSAGE, or HIGH if there is none. */
+    private int search(int low, int high, int message) {
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (posting(middle) < message) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int posting(int i) {
+        return bytes.getInt(postings_at + i * 4);
+    }
+
+    /** Returns the distinct trigrams of BYTES, each as the int [byte][byte][byte]. */
+    private static Set<Integer> trigrams(byte[] bytes) {
+        LinkedHashSet<Integer> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= bytes.length; i++) {
+            trigrams.add((bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff));
+        }
+        return trigrams;
+    }
+
+    /** Returns the I-th built message. */
+    private String message(int i) {
+        int start = bytes.getInt(offsets_at + i * 4);
+        int end = bytes.getInt(offsets_at + (i + 1) * 4);
+        return string(messages_at + start, end - start);
+    }
+
+    private String string(int at, int length) {
+        byte[] encoded = new byte[length];
+        bytes.get(at, encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the 20 byte ID at AT in the file as a hexadecimal string. */
+    private String id(int at) {
+        byte[] id = new byte[ID_LENGTH];
+        bytes.get(at, id);
+        StringBuilder hex = new StringBuilder(UID_LENGTH);
+        for (byte b : id) {
+            hex.append(Character.forDigit((b >>> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /** Returns strings that every string matched by the regular expression PATTERN must contain: the runs of
+     *  characters it matches literally outside any group, character class or optional part. Returns none if the
+     *  pattern has alternatives or flags, since then no run is certain to be in every match. */
+    static List<String> literals(String pattern) {
+        ArrayList<String> literals = new ArrayList<>();
+        if (pattern.contains("|") || pattern.contains("(?") || pattern.contains("\\Q")) {
+            return literals;
+        }
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            Character literal = null;
+            if (c == '\\' && i + 1 < pattern.length()) {
+                char escaped = pattern.charAt(i + 1);
+                i += 1;
+                if (!Character.isLetterOrDigit(escaped)) {
+                    literal = escaped;
+                }
+            } else if (c == '[') {
+                // Skip the character class, whose closing bracket may be escaped or come first
+                i += 1;
+                if (i < pattern.length() && pattern.charAt(i) == '^') {
+                    i += 1;
+                }
+                if (i < pattern.length() && pattern.charAt(i) == ']') {
+                    i += 1;
+                }
+                while (i < pattern.length() && pattern.charAt(i) != ']') {
+                    i += pattern.charAt(i) == '\\' ? 2 : 1;
+                }
+            } else if (c == '(') {
+                depth += 1;
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+            } else if (".^$*+?{}".indexOf(c) < 0 && !Character.isSurrogate(c)) {
+                literal = c;
+            }
+
+            char next = i + 1 < pattern.length() ? pattern.charAt(i + 1) : 0;
+            boolean optional = next == '?' || next == '*' || next == '{';
+            if (literal != null && depth == 0 && !optional) {
+                run.append(literal.charValue());
+                if (next != '+') {
+                    continue;
+                }
+            }
+            if (run.length() > 0) {
+                literals.add(run.toString());
+                run.setLength(0);
+            }
+        }
+        if (run.length() > 0) {
+            literals.add(run.toString());
+        }
+        return literals;
+    }
+}
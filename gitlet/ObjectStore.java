@@ -0,0 +1,741 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The Object Store reads and writes the blob files in .gitlet/Blobs, the commit files in .gitlet/Commits and
+ *  the tree files in .gitlet/Trees, and reads objects that the repack command has moved into packs (see Pack).
+ *
+ *  Blobs are content addressed: a blob file is named by the SHA1 hash of the file contents it holds
+ *  (Blob.content_compare), so identical contents are stored once no matter how many filenames or commits
+ *  refer to them, and renaming a file stores nothing new. Commit and tree files are named by the SHA1 hash of
+ *  the encoded Commit or Tree. Since the name of an object file determines its contents, writing an object that
+ *  already exists is skipped.
+ *
+ *  An object file holds a short header followed by the contents, compressed with the codec named in the header:
+ *      [4 byte MAGIC][1 byte codec ID][8 byte length of the uncompressed contents][contents]
+ *  The length is left out for Codec.NONE, where it is simply the rest of the file.
+ *  For blobs the contents are the file contents; for commits and trees they are the encoded Commit or Tree
+ *  (see Commit.encode and Tree.encode).
+ *  Contents are always copied, hashed and compressed in chunks of BUFFER_SIZE bytes, so files much larger
+ *  than the heap can be added and checked out with constant memory.
+ *
+ *  Object files written by older versions of Gitlet hold a serialized Blob or Commit object instead, and
+ *  such blobs are named by the hash of the whole Blob object. They are recognised by the missing MAGIC,
+ *  and commits refer to them by their name, so they are still read the same way. Commits serialized by
+ *  older versions are rewritten in the encoded form, and their blobs copied under content hashes,
+ *  by Repository.migrate.
+ *
+ *  New objects are always written as loose files. Reads look for a loose file first and then search the packs,
+ *  so callers never need to know where an object is kept. In a pack, a blob may be stored as a delta against
+ *  an earlier version of the same file; such blobs are rebuilt on reading and kept in a small cache. */
+public class ObjectStore {
+
+    /** Marks an object file written with a header, as opposed to a bare serialized object. */
+    private static final byte[] MAGIC = {'g', 'l', 'b', 'l'};
+
+    /** Size of the chunks in which contents are copied. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Copies the contents of FILE into the Blobs folder, unless a blob with the same contents is already stored.
+     *  Returns the hash and size of the contents; the hash is the blob ID. The file is hashed first, so that
+     *  contents already stored are neither copied nor compressed again. */
+    public static Blob.Header put_file(File file) {
+        return put_file(file, sha1Contents(file));
+    }
+
+    /** Like put_file(FILE), for a file whose contents are known to hash to BLOBID, as found by add. The contents
+     *  are hashed again as they are copied, and stored under that hash, in case the file changed since. */
+    public static Blob.Header put_file(File file, String blobID) {
+        if (has_blob(blobID)) {
+            return new Blob.Header(blobID, file.length());
+        }
+        Codec codec = Codec.chosen();
+        File temp = temp_file(Blobs);
+        MessageDigest md = sha1Digest();
+        long size = 0;
+        try (InputStream in = new FileInputStream(file); OutputStream out = open_for_writing(temp, codec)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+                size += n;
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        write_length(temp, codec, size);
+        String written_blobID = toHex(md.digest());
+        store(temp, join(Blobs, written_blobID));
+        return new Blob.Header(written_blobID, size);
+    }
+
+    /** Makes sure BLOB is in the Blobs folder and returns its blob ID, the hash of its contents.
+     *  Blobs created by add are already stored; only blobs staged by older versions of Gitlet,
+     *  which carry their contents with them, need to be written here. */
+    public static String put_blob(Blob blob) {
+        if (blob.contents != null && !has_blob(blob.content_compare)) {
+            store(write_temp(Blobs, blob.contents), join(Blobs, blob.content_compare));
+        }
+        return blob.content_compare;
+    }
+
+    /** Writes COMMIT to the Commits folder unless it is already stored, and returns its commit ID,
+     *  the hash of the encoded commit. */
+    public static String put_commit(Commit commit) {
+        byte[] encoded = commit.encode();
+        String commitID = sha1(encoded);
+        if (!has_commit(commitID)) {
+            store(write_temp(Commits, encoded), join(Commits, commitID));
+        }
+        return commitID;
+    }
+
+    /** Writes TREE to the Trees folder unless it is already stored, and returns its tree ID,
+     *  the hash of the encoded tree. */
+    public static String put_tree(Tree tree) {
+        byte[] encoded = tree.encode();
+        String treeID = sha1(encoded);
+        if (!has_object(Pack.TREE, Trees, treeID)) {
+            // Repositories made before trees existed have no Trees folder yet
+            Trees.mkdir();
+            store(write_temp(Trees, encoded), join(Trees, treeID));
+        }
+        return treeID;
+    }
+
+    /** Returns the tree with the given tree ID. */
+    public static Tree get_tree(String treeID) {
+        return Tree.decode(Cache.object(treeID, () -> read_encoded(locate(Pack.TREE, Trees, treeID))));
+    }
+
+    /** Overwrites the stored commit with the given commit ID with COMMIT, keeping its ID even though it is no
+     *  longer the hash of the stored bytes. Only for rewriting commits in a new format, see Repository.migrate. */
+    public static void replace_commit(String commitID, Commit commit) {
+        Cache.forget_object(commitID);
+        File temp = write_temp(Commits, commit.encode());
+        try {
+            Files.move(temp.toPath(), join(Commits, commitID).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            temp.delete();
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Makes sure the contents of the blob with the given blob ID are stored under their own hash, and returns
+     *  that hash and the size. Blobs written by older versions of Gitlet are named by the hash of the whole
+     *  serialized Blob; their contents are copied to a new blob named by content, see Repository.migrate. */
+    public static Blob.Header migrate_blob(String blobID) {
+        Blob.Header header = read_header(blobID);
+        if (!header.content_compare.equals(blobID) && !has_blob(header.content_compare)) {
+            store(write_temp(Blobs, read_contents(blobID)), join(Blobs, header.content_compare));
+        }
+        return header;
+    }
+
+    /** Returns true if a commit with the given commit ID is stored, loose or packed. */
+    public static boolean has_commit(String commitID) {
+        return has_object(Pack.COMMIT, Commits, commitID);
+    }
+
+    /** Returns true if a blob with the given blob ID is stored, loose or packed. */
+    public static boolean has_blob(String blobID) {
+        return has_object(Pack.BLOB, Blobs, blobID);
+    }
+
+    /** Returns true if an object of the given TYPE and ID is stored, loose in DIR or packed. */
+    private static boolean has_object(byte type, File dir, String id) {
+        if (!is_ID(id) || join(dir, id).exists()) {
+            return is_ID(id);
+        }
+        Pack.Entry entry = Pack.find(id);
+        return entry != null && same_type(entry.type, type);
+    }
+
+    /** Returns true if an object packed with the type PACKED is of the given TYPE; blobs may be packed as deltas. */
+    private static boolean same_type(byte packed, byte type) {
+        return packed == type || (packed == Pack.DELTA && type == Pack.BLOB);
+    }
+
+    /** Returns the IDs of all stored commits, loose or packed. */
+    public static List<String> commit_ids() {
+        TreeSet<String> ids = new TreeSet<>(loose_ids(Commits));
+        for (Pack pack : Pack.all()) {
+            for (int i = 0; i < pack.count; i++) {
+                if (pack.type(i) == Pack.COMMIT) {
+                    ids.add(pack.id(i));
+                }
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** Returns the commit with the given commit ID. */
+    public static Commit get_commit(String commitID) {
+        byte[] contents = Cache.object(commitID, () -> read_encoded(locate(Pack.COMMIT, Commits, commitID)));
+        if (Format.is_serialized(contents)) {
+            // Written with Java serialization by an older version of Gitlet
+            return read_object(locate(Pack.COMMIT, Commits, commitID), Commit.class);
+        }
+        return Commit.decode(contents);
+    }
+
+    /** Returns the decompressed contents of the stored object, or all of its bytes if it has no header. */
+    private static byte[] read_encoded(Stored stored) {
+        Header header = Header.read(stored);
+        try (InputStream in = header == null ? stored.open() : open_contents(stored, header)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Returns the object of type T held in the object file FILE, whatever codec it was written with. */
+    public static <T extends Serializable> T read_object(File file, Class<T> expectedClass) {
+        return read_object(new Stored(file), expectedClass);
+    }
+
+    private static <T extends Serializable> T read_object(Stored stored, Class<T> expectedClass) {
+        Header header = Header.read(stored);
+        InputStream contents = header == null ? stored.open() : open_contents(stored, header);
+        try (ObjectInputStream in = new ObjectInputStream(contents)) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException | ClassNotFoundException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Returns the hash and size of the contents of the blob with the given blob ID, without reading the contents
+     *  (except for blobs written by older versions of Gitlet). */
+    public static Blob.Header read_header(String blobID) {
+        Stored stored = locate(Pack.BLOB, Blobs, blobID);
+        Header header = Header.read(stored);
+        if (header == null) {
+            return read_object(stored, Blob.class).header();
+        }
+        return new Blob.Header(blobID, header.size);
+    }
+
+    /** Returns a stream over the contents of the blob with the given blob ID. */
+    public static InputStream open(String blobID) {
+        Stored stored = locate(Pack.BLOB, Blobs, blobID);
+        Header header = Header.read(stored);
+        if (header == null) {
+            return new ByteArrayInputStream(read_object(stored, Blob.class).contents);
+        }
+        return open_contents(stored, header);
+    }
+
+    /** Returns the whole contents of the blob with the given blob ID in a byte array.
+     *  Only for contents that must be held in memory anyway, such as those of merge conflicts. */
+    public static byte[] read_contents(String blobID) {
+        try (InputStream in = open(blobID)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Writes the contents of the blob with the given blob ID to FILE, creating or overwriting it as needed.
+     *  Uncompressed contents are copied to the file by the operating system without passing through
+     *  the heap; compressed contents are decompressed in chunks. Returns the hash of the contents written. */
+    public static String write_to(String blobID, File file) {
+        file.getParentFile().mkdirs();
+        Stored stored = locate(Pack.BLOB, Blobs, blobID);
+        Header header = Header.read(stored);
+        if (header == null) {
+            Blob blob = read_object(stored, Blob.class);
+            writeContents(file, blob.contents);
+            return blob.content_compare;
+        }
+        if (header.codec != Codec.NONE) {
+            try (InputStream in = open_contents(stored, header); OutputStream out = new FileOutputStream(file)) {
+                in.transferTo(out);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            return blobID;
+        }
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            stored.copy_to(out, header.length);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return blobID;
+    }
+
+    /** Moves all loose objects, and the objects of all existing packs, into new packs, then deletes the loose
+     *  object files and old packs they replace. Blobs larger than Pack.MAX_PACKED_OBJECT stay loose, and blobs
+     *  that differ little from the previous version of their file are packed as deltas (see plan_deltas).
+     *  Returns the number of objects packed and the number of them stored as deltas. */
+    public static int[] repack() {
+        // Every object to pack, by ID, with its type; a loose copy of an object wins over a packed one.
+        TreeMap<String, Byte> types = new TreeMap<>();
+        TreeMap<String, Stored> objects = new TreeMap<>();
+        List<Pack> old_packs = Pack.all();
+        for (Pack pack : old_packs) {
+            for (int i = 0; i < pack.count; i++) {
+                types.put(pack.id(i), pack.type(i));
+                objects.put(pack.id(i), new Stored(pack.slice(i)));
+            }
+        }
+        ArrayList<File> loose_files = new ArrayList<>();
+        for (String commitID : loose_ids(Commits)) {
+            types.put(commitID, Pack.COMMIT);
+            objects.put(commitID, new Stored(join(Commits, commitID)));
+            loose_files.add(join(Commits, commitID));
+        }
+        for (String treeID : loose_ids(Trees)) {
+            types.put(treeID, Pack.TREE);
+            objects.put(treeID, new Stored(join(Trees, treeID)));
+            loose_files.add(join(Trees, treeID));
+        }
+        for (String blobID : loose_ids(Blobs)) {
+            File blob_file = join(Blobs, blobID);
+            if (blob_file.length() <= Pack.MAX_PACKED_OBJECT) {
+                types.put(blobID, Pack.BLOB);
+                objects.put(blobID, new Stored(blob_file));
+                loose_files.add(blob_file);
+            }
+        }
+        if (loose_files.isEmpty() && old_packs.size() <= 1) {
+            return new int[] {0, 0};
+        }
+        HashMap<String, byte[]> deltas = plan_deltas(types, objects);
+
+        ArrayList<String> written = new ArrayList<>();
+        Pack.Writer writer = new Pack.Writer();
+        for (Map.Entry<String, Stored> id_object : objects.entrySet()) {
+            String id = id_object.getKey();
+            byte type = types.get(id);
+            ByteBuffer bytes;
+            if (deltas.containsKey(id)) {
+                type = Pack.DELTA;
+                bytes = ByteBuffer.wrap(deltas.get(id));
+            } else if (type == Pack.DELTA) {
+                // Was a delta, but its base is now too far down the chain or no longer a good match
+                type = Pack.BLOB;
+                bytes = ByteBuffer.wrap(encode(read_contents(id)));
+            } else {
+                bytes = id_object.getValue().bytes();
+            }
+            if (!writer.isEmpty() && writer.size_with(bytes.remaining()) > Pack.MAX_PACK_SIZE) {
+                written.add(writer.finish());
+                writer = new Pack.Writer();
+            }
+            writer.add(type, id, bytes);
+        }
+        written.add(writer.finish());
+
+        // The new packs are complete, so what they replace can go.
+        for (Pack pack : old_packs) {
+            if (!written.contains(pack.pack_file.getName())) {
+                pack.index_file.delete();
+                pack.pack_file.delete();
+            }
+        }
+        for (File loose_file : loose_files) {
+            loose_file.delete();
+        }
+        Pack.reload();
+        return new int[] {objects.size(), deltas.size()};
+    }
+
+    /** Longest chain of deltas that must be applied to rebuild a blob. */
+    static final int MAX_DELTA_DEPTH = 16;
+
+    /** Chooses which of the blobs about to be packed to store as deltas, and returns those deltas by blob ID,
+     *  each prefixed with the ID of its base.
+     *
+     *  Commits are visited parents first, and the base of each blob is the blob of the same file in the
+     *  first parent. A blob is only ever delta'd against a blob decided before it, so chains never loop,
+     *  and a blob whose base chain is already MAX_DELTA_DEPTH long is stored whole. A delta is only kept
+     *  if it is under half the size of the contents and smaller than the blob stored whole. Blobs written
+     *  by older versions of Gitlet are left as they are. */
+    private static HashMap<String, byte[]> plan_deltas(Map<String, Byte> types, Map<String, Stored> objects) {
+        HashMap<String, byte[]> deltas = new HashMap<>();
+        // Chain depth of every blob decided so far; 0 for blobs stored whole
+        HashMap<String, Integer> depths = new HashMap<>();
+        CommitGraph graph = CommitGraph.load();
+        // Commits are read ahead of the walk, and a parent just visited is kept rather than read again
+        Commit previous = null;
+        try (HistoryWalker commits = new HistoryWalker(Arrays.asList(graph.ids).subList(0, graph.size))) {
+            for (int i = 0; i < graph.size; i++) {
+                Commit commit = commits.next();
+                int p = graph.parents[i];
+                Commit parent = p == CommitGraph.NONE ? null : p == i - 1 ? previous : get_commit(graph.ids[p]);
+                previous = commit;
+                for (Map.Entry<String, String> name_blobID : commit.files().entrySet()) {
+                    String blobID = name_blobID.getValue();
+                    Byte type = types.get(blobID);
+                    if (type == null || !same_type(type, Pack.BLOB) || depths.containsKey(blobID)) {
+                        continue;
+                    }
+                    depths.put(blobID, 0);
+                    String baseID = parent == null ? null : parent.files().get(name_blobID.getKey());
+                    if (baseID == null || !depths.containsKey(baseID) || depths.get(baseID) >= MAX_DELTA_DEPTH
+                            || (type == Pack.BLOB && Header.read(objects.get(blobID)) == null)) {
+                        continue;
+                    }
+                    byte[] contents = read_contents(blobID);
+                    byte[] delta = Delta.create(read_contents(baseID), contents);
+                    long whole_length = type == Pack.BLOB ? objects.get(blobID).length() : Long.MAX_VALUE;
+                    if (delta.length < contents.length / 2 && Pack.ID_LENGTH + delta.length < whole_length) {
+                        deltas.put(blobID, ByteBuffer.allocate(Pack.ID_LENGTH + delta.length)
+                                .put(Pack.to_bytes(baseID)).put(delta).array());
+                        depths.put(blobID, depths.get(baseID) + 1);
+                    }
+                }
+            }
+        }
+        return deltas;
+    }
+
+    /** Returns the stored bytes of the object of the given TYPE and ID, from its loose file in DIR or from a pack.
+     *  A blob stored as a delta is rebuilt, and then stands for its whole contents without a header. */
+    private static Stored locate(byte type, File dir, String id) {
+        File file = join(dir, id);
+        if (file.exists()) {
+            return new Stored(file);
+        }
+        Pack.Entry entry = is_ID(id) ? Pack.find(id) : null;
+        if (entry == null || !same_type(entry.type, type)) {
+            throw new IllegalArgumentException("No object with ID " + id);
+        }
+        if (entry.type == Pack.DELTA) {
+            return Stored.whole(ByteBuffer.wrap(rebuild(id, entry.bytes)));
+        }
+        return new Stored(entry.bytes);
+    }
+
+    /** Blobs rebuilt from deltas, and the bases they were rebuilt from, least recently used first.
+     *  Checking out several versions along the same delta chain then rebuilds each base only once. */
+    private static final LinkedHashMap<String, byte[]> rebuilt = new LinkedHashMap<>(16, 0.75f, true);
+    private static long rebuilt_bytes;
+
+    /** Largest total size of the blobs kept in the rebuilt cache. */
+    static final long REBUILT_CACHE_SIZE = 64L << 20;
+
+    /** Number of blobs taken from the rebuilt cache, and number rebuilt from their delta. */
+    static int rebuilt_hits;
+    static int rebuilt_misses;
+
+    /** Returns the contents of the blob with the given ID, stored in a pack as the delta DELTA_ENTRY.
+     *  Synchronized, since checkout reads blobs on several threads and they share the rebuilt cache. */
+    private static synchronized byte[] rebuild(String blobID, ByteBuffer delta_entry) {
+        byte[] contents = rebuilt.get(blobID);
+        if (contents != null) {
+            rebuilt_hits += 1;
+            return contents;
+        }
+        rebuilt_misses += 1;
+        ByteBuffer bytes = delta_entry.duplicate();
+        byte[] base = new byte[Pack.ID_LENGTH];
+        bytes.get(base);
+        byte[] delta = new byte[bytes.remaining()];
+        bytes.get(delta);
+        String baseID = toHex(base);
+        byte[] base_contents = rebuilt.get(baseID);
+        if (base_contents == null) {
+            base_contents = read_contents(baseID);
+            remember(baseID, base_contents);
+        }
+        contents = Delta.apply(base_contents, delta);
+        remember(blobID, contents);
+        return contents;
+    }
+
+    private static void remember(String blobID, byte[] contents) {
+        if (rebuilt.put(blobID, contents) == null) {
+            rebuilt_bytes += contents.length;
+        }
+        Iterator<byte[]> oldest = rebuilt.values().iterator();
+        while (rebuilt_bytes > REBUILT_CACHE_SIZE && oldest.hasNext()) {
+            rebuilt_bytes -= oldest.next().length;
+            oldest.remove();
+        }
+    }
+
+    /** Returns the names of the loose object files in DIR, leaving out temporary files. */
+    private static List<String> loose_ids(File dir) {
+        ArrayList<String> ids = new ArrayList<>();
+        if (!dir.isDirectory()) {
+            return ids;
+        }
+        for (String name : plainFilenamesIn(dir)) {
+            if (is_ID(name)) {
+                ids.add(name);
+            }
+        }
+        return ids;
+    }
+
+    private static boolean is_ID(String id) {
+        if (id.length() != UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            if (Character.digit(id.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The stored bytes of one object: either a loose object file, or a slice of a mapped pack file.
+     *  For a blob rebuilt from a delta, the buffer holds the whole contents and there is no header. */
+    private static class Stored {
+        final File file;
+        final ByteBuffer buffer;
+        boolean whole;
+
+        Stored(File file) {
+            this.file = file;
+            this.buffer = null;
+        }
+
+        Stored(ByteBuffer buffer) {
+            this.file = null;
+            this.buffer = buffer;
+        }
+
+        static Stored whole(ByteBuffer contents) {
+            Stored stored = new Stored(contents);
+            stored.whole = true;
+            return stored;
+        }
+
+        long length() {
+            return file != null ? file.length() : buffer.remaining();
+        }
+
+        /** Returns a stream over the stored bytes. */
+        InputStream open() {
+            if (buffer != null) {
+                return new BufferInputStream(buffer.duplicate());
+            }
+            try {
+                return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
+
+        /** Returns all the stored bytes in a buffer. */
+        ByteBuffer bytes() {
+            return buffer != null ? buffer.duplicate() : ByteBuffer.wrap(readContents(file));
+        }
+
+        /** Copies the stored bytes from POSITION on to OUT. */
+        void copy_to(FileChannel out, long position) throws IOException {
+            if (buffer != null) {
+                ByteBuffer rest = buffer.duplicate().position((int) position);
+                while (rest.hasRemaining()) {
+                    out.write(rest);
+                }
+                return;
+            }
+            try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long end = in.size();
+                while (position < end) {
+                    position += in.transferTo(position, end - position, out);
+                }
+            }
+        }
+    }
+
+    /** An InputStream over the remaining bytes of a ByteBuffer. */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int step = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + step);
+            return step;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /** The header of an object file. */
+    private static class Header {
+        Codec codec;
+        /** Length of the uncompressed contents. */
+        long size;
+        /** Length of the header itself. */
+        int length;
+
+        /** Reads the header of the stored object, or returns null if it is a bare serialized object. */
+        static Header read(Stored stored) {
+            if (stored.whole) {
+                Header header = new Header();
+                header.codec = Codec.NONE;
+                header.size = stored.length();
+                return header;
+            }
+            try (DataInputStream in = new DataInputStream(stored.open())) {
+                byte[] magic = new byte[MAGIC.length];
+                if (in.readNBytes(magic, 0, MAGIC.length) < MAGIC.length || !Arrays.equals(magic, MAGIC)) {
+                    return null;
+                }
+                Header header = new Header();
+                header.codec = Codec.of(in.readByte());
+                if (header.codec == Codec.NONE) {
+                    header.length = MAGIC.length + 1;
+                    header.size = stored.length() - header.length;
+                } else {
+                    header.length = MAGIC.length + 1 + 8;
+                    header.size = in.readLong();
+                }
+                return header;
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
+    }
+
+    /** Returns a stream of the decompressed contents of the stored object with the given HEADER. */
+    private static InputStream open_contents(Stored stored, Header header) {
+        try {
+            InputStream in = stored.open();
+            in.skipNBytes(header.length);
+            return header.codec.decompress(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Writes the header for CODEC to the new object file FILE, and returns a stream that compresses
+     *  contents onto the rest of it. The length of the contents is filled in by write_length. */
+    private static OutputStream open_for_writing(File file, Codec codec) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        out.write(MAGIC);
+        out.write(codec.id);
+        if (codec != Codec.NONE) {
+            out.write(new byte[8]);
+        }
+        return codec.compress(out);
+    }
+
+    /** Fills in the length of the uncompressed contents in the header of FILE. */
+    private static void write_length(File file, Codec codec, long size) {
+        if (codec == Codec.NONE) {
+            return;
+        }
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(MAGIC.length + 1);
+            out.writeLong(size);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Returns CONTENTS in the form of an object file, with a header and compressed with the chosen codec. */
+    private static byte[] encode(byte[] contents) {
+        Codec codec = Codec.chosen();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = codec.compress(bytes)) {
+            out.write(contents);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 1 + (codec == Codec.NONE ? 0 : 8));
+        header.put(MAGIC).put(codec.id);
+        if (codec != Codec.NONE) {
+            header.putLong(contents.length);
+        }
+        ByteArrayOutputStream object = new ByteArrayOutputStream();
+        object.writeBytes(header.array());
+        object.writeBytes(bytes.toByteArray());
+        return object.toByteArray();
+    }
+
+    /** Writes CONTENTS as a new object file in a temporary file in DIR, and returns the temporary file. */
+    private static File write_temp(File dir, byte[] contents) {
+        Codec codec = Codec.chosen();
+        File temp = temp_file(dir);
+        try (OutputStream out = open_for_writing(temp, codec)) {
+            out.write(contents);
+        } catch (IOException e) {
+            temp.delete();
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        write_length(temp, codec, contents.length);
+        return temp;
+    }
+
+    /** Returns a new, empty temporary file in DIR. */
+    private static File temp_file(File dir) {
+        try {
+            return File.createTempFile("object", ".tmp", dir);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Moves the fully written TEMP file to OBJECT_FILE, or discards it if that object is already stored.
+     *  Writing under a temporary name first means an object file is never seen half written. A move that fails
+     *  is an error, since the ID of the object would otherwise be returned without the object being stored. */
+    private static void store(File temp, File object_file) {
+        if (object_file.exists()) {
+            temp.delete();
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), object_file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+}
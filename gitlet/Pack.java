@@ -0,0 +1,263 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** A Pack holds many objects in one file, so that a repository does not need one file per commit and blob.
+ *  Packs are written by the repack command and live in .gitlet/Packs as a pair of files:
+ *
+ *  pack-ID.pack: [4 byte PACK_MAGIC][int count] followed by the stored bytes of each object, exactly as they
+ *                would be in a loose object file (header and compressed contents).
+ *  pack-ID.idx:  [4 byte INDEX_MAGIC][int count] followed by one fixed-length entry per object, sorted by ID:
+ *                [20 byte object ID][1 byte type][long offset in pack file][long length]
+ *
+ *  Both files are memory mapped. An object is found by binary search over the index entries, and its bytes
+ *  are a slice of the mapped pack file, so reading a packed object opens no file at all.
+ *  The pack ID is the hash of the IDs of all objects in the pack. */
+class Pack {
+
+    /** Types of object held in a pack. A DELTA is a blob stored as [20 byte base blob ID][Delta]. */
+    static final byte COMMIT = 0;
+    static final byte BLOB = 1;
+    static final byte DELTA = 2;
+    static final byte TREE = 3;
+
+    private static final byte[] PACK_MAGIC = {'g', 'p', 'c', 'k'};
+    private static final byte[] INDEX_MAGIC = {'g', 'i', 'd', 'x'};
+    private static final int HEADER_LENGTH = 8;
+    static final int ID_LENGTH = UID_LENGTH / 2;
+    private static final int ENTRY_LENGTH = ID_LENGTH + 1 + 8 + 8;
+
+    /** Packs are kept below this size, so that a whole pack can be mapped into one buffer. */
+    static final long MAX_PACK_SIZE = 1L << 30;
+
+    /** Objects larger than this are left loose by repack. */
+    static final long MAX_PACKED_OBJECT = 32L << 20;
+
+    /** All packs of the repository, loaded when first needed. */
+    private static List<Pack> packs;
+
+    final File pack_file;
+    final File index_file;
+    private final MappedByteBuffer pack;
+    private final MappedByteBuffer index;
+    final int count;
+
+    private Pack(File pack_file, File index_file) {
+        this.pack_file = pack_file;
+        this.index_file = index_file;
+        this.pack = map(pack_file);
+        this.index = map(index_file);
+        byte[] magic = new byte[INDEX_MAGIC.length];
+        index.get(0, magic);
+        if (!Arrays.equals(magic, INDEX_MAGIC)) {
+            throw new IllegalArgumentException("not a pack index: " + index_file);
+        }
+        this.count = index.getInt(INDEX_MAGIC.length);
+    }
+
+    /** Returns all packs of the repository. */
+    static synchronized List<Pack> all() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            List<String> files = Packs.isDirectory() ? plainFilenamesIn(Packs) : List.of();
+            for (String name : files) {
+                if (name.endsWith(".idx")) {
+                    File pack_file = join(Packs, name.substring(0, name.length() - 4) + ".pack");
+                    if (pack_file.exists()) {
+                        packs.add(new Pack(pack_file, join(Packs, name)));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Forgets the loaded packs, so that all() reads the Packs folder again. */
+    static void reload() {
+        packs = null;
+    }
+
+    /** Returns the pack and position of the object with the given ID, or null if no pack holds it. */
+    static Entry find(String id) {
+        byte[] key = to_bytes(id);
+        for (Pack pack : all()) {
+            int i = pack.search(key);
+            if (i >= 0) {
+                return new Entry(pack, i);
+            }
+        }
+        return null;
+    }
+
+    /** An object found in a pack. */
+    static class Entry {
+        final byte type;
+        final ByteBuffer bytes;
+
+        Entry(Pack pack, int i) {
+            this.type = pack.type(i);
+            this.bytes = pack.slice(i);
+        }
+    }
+
+    /** Returns the position of the entry with ID KEY in the index, or -1 if there is none. */
+    private int search(byte[] key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int base = HEADER_LENGTH + middle * ENTRY_LENGTH;
+            int compare = 0;
+            for (int k = 0; k < ID_LENGTH && compare == 0; k++) {
+                compare = Integer.compare(index.get(base + k) & 0xFF, key[k] & 0xFF);
+            }
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the ID of the I-th object in the index. */
+    String id(int i) {
+        byte[] id = new byte[ID_LENGTH];
+        index.get(HEADER_LENGTH + i * ENTRY_LENGTH, id);
+        return toHex(id);
+    }
+
+    /** Returns the type of the I-th object in the index. */
+    byte type(int i) {
+        return index.get(HEADER_LENGTH + i * ENTRY_LENGTH + ID_LENGTH);
+    }
+
+    /** Returns the stored bytes of the I-th object in the index, as a slice of the mapped pack file. */
+    ByteBuffer slice(int i) {
+        int base = HEADER_LENGTH + i * ENTRY_LENGTH + ID_LENGTH + 1;
+        long offset = index.getLong(base);
+        long length = index.getLong(base + 8);
+        return pack.slice((int) offset, (int) length);
+    }
+
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    static byte[] to_bytes(String id) {
+        byte[] bytes = new byte[id.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (Character.digit(id.charAt(2 * i), 16) << 4 | Character.digit(id.charAt(2 * i + 1), 16));
+        }
+        return bytes;
+    }
+
+    /** Writes one pack. Objects must be added in order of ID. */
+    static class Writer {
+        private final File temp;
+        private final FileChannel out;
+        private final ArrayList<String> ids = new ArrayList<>();
+        private final IndexEntries entries = new IndexEntries();
+        private long size = HEADER_LENGTH;
+
+        Writer() {
+            try {
+                Packs.mkdir();
+                temp = File.createTempFile("pack", ".tmp", Packs);
+                out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE);
+                out.position(HEADER_LENGTH);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
+
+        /** Returns the size the pack would have after adding LENGTH more bytes. */
+        long size_with(long length) {
+            return size + length;
+        }
+
+        boolean isEmpty() {
+            return ids.isEmpty();
+        }
+
+        /** Adds the object of the given TYPE and ID, whose stored bytes are BYTES. */
+        void add(byte type, String id, ByteBuffer bytes) {
+            long length = bytes.remaining();
+            try {
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            ids.add(id);
+            entries.add(to_bytes(id), type, size, length);
+            size += length;
+        }
+
+        /** Finishes the pack and its index, moves them into place and returns the name of the pack file. */
+        String finish() {
+            String pack_ID = sha1(String.join("", ids));
+            File pack_file = join(Packs, "pack-" + pack_ID + ".pack");
+            File index_file = join(Packs, "pack-" + pack_ID + ".idx");
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                header.put(PACK_MAGIC).putInt(ids.size()).flip();
+                out.write(header, 0);
+                out.close();
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            if (pack_file.exists() || !temp.renameTo(pack_file)) {
+                temp.delete();
+            }
+            File index_temp = join(Packs, "pack-" + pack_ID + ".idx.tmp");
+            try (RandomAccessFile index_out = new RandomAccessFile(index_temp, "rw")) {
+                index_out.write(INDEX_MAGIC);
+                index_out.writeInt(ids.size());
+                index_out.write(entries.bytes());
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            if (index_file.exists() || !index_temp.renameTo(index_file)) {
+                index_temp.delete();
+            }
+            return pack_file.getName();
+        }
+    }
+
+    /** The index entries of a pack being written, in the order they are added. */
+    private static class IndexEntries {
+        private ByteBuffer buffer = ByteBuffer.allocate(ENTRY_LENGTH * 64);
+
+        void add(byte[] id, byte type, long offset, long length) {
+            if (buffer.remaining() < ENTRY_LENGTH) {
+                ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+            buffer.put(id).put(type).putLong(offset).putLong(length);
+        }
+
+        byte[] bytes() {
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+    }
+}
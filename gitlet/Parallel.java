@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/** Runs independent tasks, such as hashing or writing many files, on a bounded pool of worker threads.
+ *  The number of threads is taken from -Dgitlet.threads and defaults to the number of processors;
+ *  -Dgitlet.threads=1 runs every task on the calling thread, one after another. */
+class Parallel {
+
+    /** Returns the number of worker threads to use. */
+    static int threads() {
+        String threads = System.getProperty("gitlet.threads");
+        if (threads == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            return Math.max(1, Integer.parseInt(threads));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("gitlet.threads must be a number: " + threads);
+        }
+    }
+
+    /** Applies TASK to every item of ITEMS on the worker pool and returns the results in the order of ITEMS.
+     *  When tasks fail, every other task is still run to the end, and then the exception of the first failing
+     *  item in the order of ITEMS is thrown, so which failure is reported never depends on thread timing. */
+    static <T, R> List<R> map(List<T> items, Function<? super T, ? extends R> task) {
+        int threads = Math.min(threads(), items.size());
+        ArrayList<R> results = new ArrayList<>(items.size());
+        if (threads <= 1) {
+            for (T item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // Items are handed out in contiguous batches, a few per thread, so that many small tasks do not each
+            // pay for a submission. Failures are caught inside the batch, so that they are thrown here exactly as
+            // the task threw them.
+            Object[] outputs = new Object[items.size()];
+            Throwable[] failures = new Throwable[items.size()];
+            int batch = Math.max(1, items.size() / (threads * BATCHES_PER_THREAD));
+            ArrayList<ForkJoinTask<?>> batches = new ArrayList<>();
+            for (int from = 0; from < items.size(); from += batch) {
+                int start = from;
+                int end = Math.min(items.size(), from + batch);
+                batches.add(pool.submit(() -> {
+                    for (int i = start; i < end; i++) {
+                        try {
+                            outputs[i] = task.apply(items.get(i));
+                        } catch (Throwable e) {
+                            failures[i] = e;
+                        }
+                    }
+                }));
+            }
+            for (ForkJoinTask<?> running : batches) {
+                running.join();
+            }
+            for (Throwable failure : failures) {
+                if (failure != null) {
+                    throw unchecked(failure);
+                }
+            }
+            for (Object output : outputs) {
+                @SuppressWarnings("unchecked")
+                R result = (R) output;
+                results.add(result);
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Number of batches the items are split into per worker thread, so that threads that finish early can take
+     *  over work from the others. */
+    private static final int BATCHES_PER_THREAD = 8;
+
+    static RuntimeException unchecked(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalArgumentException(cause);
+    }
+}
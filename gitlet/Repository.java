@@ -1,10 +1,16 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static gitlet.Utils.*;
 
@@ -34,6 +40,9 @@ public class Repository {
     // Directory that contains all Blob files
     public static final File Blobs = join(GITLET_DIR, "Blobs");
 
+    /** The Trees folder, which holds the tree of every directory of every commit. */
+    public static final File Trees = join(GITLET_DIR, "Trees");
+
     // File that holds Staging_Area Object
     public static final File StagingArea_file = join(GITLET_DIR, "StagingArea");
 
@@ -44,7 +53,28 @@ public class Repository {
     public static File master = join(GITLET_DIR, "master");
 
     // File that holds the Branch_Control Object
-    private static final File Branch_Control_file = join(GITLET_DIR, "Branch Control");
+    public static final File Branch_Control_file = join(GITLET_DIR, "Branch Control");
+
+    // File that holds the Commit Graph, the ancestry of all commits
+    public static final File CommitGraph_file = join(GITLET_DIR, "CommitGraph");
+
+    // File that holds the Commit Index, the sorted IDs of all commits, to look up abbreviated commit IDs
+    public static final File CommitIndex_file = join(GITLET_DIR, "CommitIndex");
+
+    // File that holds a Bloom filter of the paths changed by each commit, for log -- [path]
+    public static final File ChangedPaths_file = join(GITLET_DIR, "ChangedPaths");
+
+    // File that holds the Message Index, the messages of all commits with a trigram index over them, for find
+    public static final File MessageIndex_file = join(GITLET_DIR, "MessageIndex");
+
+    // Directory that contains the pack files written by repack
+    public static final File Packs = join(GITLET_DIR, "Packs");
+
+    // File that holds the version of the format of the Commit, StagingArea and Branch Control files
+    public static final File Format_file = join(GITLET_DIR, "Format");
+
+    // File that holds the Stat Cache, the size, modified time and hash of files last seen in the CWD
+    public static final File StatCache_file = join(GITLET_DIR, "StatCache");
 
 
 
@@ -66,6 +96,7 @@ public class Repository {
         GITLET_DIR.mkdir();
         Blobs.mkdir();
         Commits.mkdir();
+        Trees.mkdir();
         try {
             StagingArea_file.createNewFile();
         } catch (IOException e) {
@@ -89,54 +120,100 @@ public class Repository {
 
         // Initialize and write StagingArea object to file
         StagingArea stagingArea = new StagingArea();
-        writeObject(StagingArea_file, stagingArea);
+        stagingArea.save();
 
         // Create initial commit
         Date timestamp = new Date(0);
         Commit initial_commit = new Commit("initial commit", timestamp);
 
         // Write initial commit to file in .gitlet/Commits, whereby the filename is the SHA1 hash of the initial_commit object
-        File Initial_Commit_file = join(Commits, sha1(serialize(initial_commit)));
+        String Initial_Commit_ID = ObjectStore.put_commit(initial_commit);
+
+        // Start the Commit Graph with the initial commit
         try {
-            Initial_Commit_file.createNewFile();
+            CommitGraph_file.createNewFile();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        writeObject(Initial_Commit_file, initial_commit);
+        CommitGraph.load().append(Initial_Commit_ID, initial_commit);
+        CommitIndex.write(CommitIndex_file, List.of(Initial_Commit_ID));
+        MessageIndex.write(MessageIndex_file, List.of(Initial_Commit_ID), List.of(initial_commit.message));
 
         // Write Initial_Commit_filename to master and HEAD files
-        writeContents(master, sha1(serialize(initial_commit)));
-        writeContents(HEAD, sha1(serialize(initial_commit)));
+        writeContents(master, Initial_Commit_ID);
+        writeContents(HEAD, Initial_Commit_ID);
 
         // Initialise and write BranchControl object to file
         Branch_Control branchctrl = new Branch_Control("master");
-        writeObject(Branch_Control_file, branchctrl);
+        branchctrl.save();
+        writeContents(Format_file, String.valueOf(Format.VERSION));
 
     }
 
 
+    /** Main class calls this method before every command in an existing Gitlet directory.
+     *  A repository made by an older version of Gitlet holds Java serialized commits, Staging Area and Branch Control,
+     *  and blobs named by the hash of the whole Blob object. Once, the first time the repository is used, every commit
+     *  is rewritten in the encoding of Format under its existing commit ID, with its files in a root Tree and its blobs
+     *  copied under the hash of their contents, and the Staging Area and Branch Control are rewritten too. Commit IDs therefore stay the same,
+     *  although for migrated commits they are no longer the hash of the stored bytes.
+     *  Migration can be interrupted and run again, since every step can be repeated. */
+    public static void migrate(){
+        if (Format_file.exists() && readContentsAsString(Format_file).trim().equals(String.valueOf(Format.VERSION))){
+            return;
+        }
+        CommitGraph graph = CommitGraph.load();
+        try (HistoryWalker commits = new HistoryWalker(Arrays.asList(graph.ids).subList(0, graph.size))){
+            for (int i = 0; i < graph.size; i++){
+                Commit commit = commits.next();
+                TreeMap<String, Blob.Header> headers = new TreeMap<>();
+                for (Map.Entry<String, String> name_blobID : commit.files().entrySet()){
+                    headers.put(name_blobID.getKey(), ObjectStore.migrate_blob(name_blobID.getValue()));
+                }
+                commit.replace_files(headers);
+                ObjectStore.replace_commit(graph.ids[i], commit);
+            }
+        }
+        StagingArea.load().save();
+        Branch_Control.load().save();
+        writeContents(Format_file, String.valueOf(Format.VERSION));
+    }
+
     /** Main class calls this method when 'add' is passed as argument, together with a file name.
      *  It adds a copy of the file to the staging area. Staging an already staged file overwrites previous entry.
      *  If current working version of file is identical to version in current commit, it is not staged and
      *  removed from staging area if it is already added. */
     public static void add (String file_name){
-        // Retrieves file referenced in CWD
-        File file_to_add = join(CWD, file_name);
+        add(List.of(file_name));
+    }
+
+    /** Adds every file named in PATHS to the staging area, as add does for one file. A path naming a directory,
+     *  such as ".", stands for every file under that directory.
+     *  HEAD, the Staging Area and the Stat Cache are read once and written once for all the files.
+     *  Files that have to be read are hashed, and compressed into the Blobs folder if their contents are new,
+     *  in parallel on the worker threads of Parallel. If a path does not exist, nothing is staged. */
+    public static void add (List<String> paths){
+        long start = System.nanoTime();
 
         // Retrieves HEAD commit
         String last_commitID = readContentsAsString(HEAD);
-        Commit last_commit = readObject(join(Commits, last_commitID), Commit.class);
-
-        // Retrieves Staging Area
-        StagingArea stagingArea = readObject(StagingArea_file, StagingArea.class);
-
-        if (!file_to_add.exists()){
-            // Check whether missing file is deleted due to rm or just not created.
-            if (last_commit.files.containsKey(file_name)){
-                // If file missing is a result of deletion, file is restored to last commit version
+        Commit last_commit = ObjectStore.get_commit(last_commitID);
+
+        // Expand directories, and check every path before staging anything
+        ArrayList<String> file_names = new ArrayList<>();
+        ArrayList<String> restored = new ArrayList<>();
+        for (String path : paths){
+            File file_to_add = join(CWD, path);
+            if (file_to_add.isDirectory()){
+                file_names.addAll(working_files(file_to_add));
+            }
+            else if (file_to_add.exists()){
+                file_names.add(working_name(file_to_add));
+            }
+            else if (last_commit.files().containsKey(path)){
+                // A missing file that is tracked was deleted, so it is restored to its last commit version
                 // and removed from Staging Area if it is staged for removal.
-                checkout1(file_name);
-                stagingArea.add_to_stage(file_name, true);
+                restored.add(path);
             }
             else {
                 System.out.println("File does not exist.");
@@ -144,33 +221,136 @@ public class Repository {
             }
         }
 
-        // Obtain SHA1 hash of file content to compare contents with version in last Commit
-        byte[] filecontents = readContents(file_to_add);
-        String sha1_of_file = sha1(filecontents);
+        // Retrieves Staging Area
+        StagingArea stagingArea = StagingArea.load();
+        for (String file_name : restored){
+            checkout1(file_name);
+            file_names.add(file_name);
+        }
 
-        Map<String, String> committed_files = last_commit.files;
-        if (committed_files.containsKey(file_name)) {
-            // Obtain SHA1 hash of file version in last Commit
-            File blob_file = join(Blobs, committed_files.get(file_name));
-            Blob blob = readObject(blob_file, Blob.class);
+        // Take the hash of each file from the Stat Cache where possible; the others are hashed in parallel.
+        // Files are only stored once their hash shows that no blob holds their contents yet.
+        StatCache cache = StatCache.load();
+        String[] hashes = new String[file_names.size()];
+        ArrayList<Integer> to_read = new ArrayList<>();
+        for (int i = 0; i < hashes.length; i++){
+            hashes[i] = cache.cached_hash(file_names.get(i));
+            if (hashes[i] == null){
+                to_read.add(i);
+            }
+        }
+        List<String> read_hashes = Parallel.map(to_read, i -> sha1Contents(join(CWD, file_names.get(i))));
+        long bytes_read = 0;
+        for (int k = 0; k < to_read.size(); k++){
+            int i = to_read.get(k);
+            hashes[i] = read_hashes.get(k);
+            cache.record(file_names.get(i), hashes[i], null);
+            cache.rehashed += 1;
+            bytes_read += join(CWD, file_names.get(i)).length();
+        }
 
-            // If file content equals version in commit, restore the file from rm (if applicable.
-            // File should not be added to Staging Area.
-            if (blob.content_compare.equals(sha1_of_file)){
-                stagingArea.add_to_stage(file_name, true);
+        // Decide which files to stage, and store the changed tracked files whose contents are new
+        boolean[] stage = new boolean[hashes.length];
+        ArrayList<Integer> to_store = new ArrayList<>();
+        for (int i = 0; i < hashes.length; i++){
+            String file_name = file_names.get(i);
+            // If file content equals version in commit, restore the file from rm (if applicable).
+            // File should not be added to Staging Area. If file not in last commit, add file straightaway.
+            stage[i] = !last_commit.files().containsKey(file_name) || !same_as_committed(cache, last_commit, file_name, hashes[i]);
+            if (stage[i] && !ObjectStore.has_blob(hashes[i])){
+                to_store.add(i);
             }
-            else {
-                // Else, add file to staging area for commit.
-                stagingArea.add_to_stage(file_name, false);
+        }
+        List<Blob.Header> stored = Parallel.map(to_store, i -> ObjectStore.put_file(join(CWD, file_names.get(i)), hashes[i]));
+        for (int k = 0; k < to_store.size(); k++){
+            int i = to_store.get(k);
+            // The contents stored, should the file have changed since it was hashed
+            hashes[i] = stored.get(k).content_compare;
+            bytes_read += join(CWD, file_names.get(i)).length();
+        }
+
+        for (int i = 0; i < hashes.length; i++){
+            stagingArea.add_to_stage(file_names.get(i), !stage[i], hashes[i]);
+        }
+        stagingArea.append();
+        cache.save();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        stats("add: %d files, %d read (%.1f MB) in %.0f ms on %d threads: %.0f files/s, %.1f MB/s", hashes.length,
+                to_read.size() + to_store.size(), bytes_read / 1e6, seconds * 1000, Parallel.threads(),
+                hashes.length / seconds, bytes_read / 1e6 / seconds);
+        cache.report();
+    }
+
+    /** Returns the names of all files under the directory DIR, leaving out the .gitlet directory, relative to the CWD
+     *  and in sorted order. */
+    static List<String> working_files(File dir){
+        ArrayList<String> names = new ArrayList<>();
+        collect_working_files(dir.getAbsoluteFile().toPath().normalize().toFile(), names);
+        names.sort(Comparator.naturalOrder());
+        return names;
+    }
+
+    /** Returns the names of all files in the working directory, as working_files(CWD). */
+    static List<String> working_files(){
+        return working_files(CWD);
+    }
+
+    private static void collect_working_files(File dir, ArrayList<String> names){
+        File[] files = dir.listFiles();
+        if (files == null){
+            return;
+        }
+        for (File file : files){
+            if (file.isDirectory()){
+                if (!file.equals(GITLET_DIR)){
+                    collect_working_files(file, names);
+                }
             }
+            else if (file.isFile()){
+                names.add(working_name(file));
+            }
+        }
+    }
 
+    /** Returns the name of FILE relative to the CWD, with '/' between directories, as names are kept in commits. */
+    static String working_name(File file){
+        return CWD.toPath().relativize(file.getAbsoluteFile().toPath().normalize()).toString().replace(File.separatorChar, '/');
+    }
+
+    /** Deletes the file with the given name from the working directory, then any directories this leaves empty. */
+    static void delete_working_file(String filename){
+        File file = join(CWD, filename);
+        if (!file.isFile()){
+            return;
         }
-        // If file not in last commit, add file straightaway.
-        else{
-            stagingArea.add_to_stage(file_name, false);
+        file.delete();
+        File dir = file.getParentFile();
+        while (dir != null && !dir.equals(CWD) && dir.toPath().startsWith(CWD.toPath())){
+            String[] left = dir.list();
+            if (left == null || left.length > 0 || !dir.delete()){
+                break;
+            }
+            dir = dir.getParentFile();
         }
+    }
 
-        writeObject(StagingArea_file, stagingArea);
+    /** Returns true if the file in CWD, whose contents hash to FILE_HASH, holds the same contents as its version in COMMIT.
+     *  Uses the blob header kept in the commit; only commits made before headers existed need their blob read,
+     *  and then only if the Stat Cache does not already know the answer. */
+    private static boolean same_as_committed(StatCache cache, Commit commit, String filename, String file_hash){
+        if (commit.headers() != null){
+            return commit.headers().get(filename).content_compare.equals(file_hash);
+        }
+        String blobID = commit.files().get(filename);
+        if (cache.matches(filename, blobID)){
+            return true;
+        }
+        if (ObjectStore.read_header(blobID).content_compare.equals(file_hash)){
+            cache.record(filename, file_hash, blobID);
+            return true;
+        }
+        return false;
     }
 
     /** Creates a commit containing tracked files in current commit and staging area.
@@ -196,34 +376,41 @@ public class Repository {
         String Branch_Contents = null;
 
         // Retrieves Staging Area to check for presence of staged files to commit
-        StagingArea SA = readObject(StagingArea_file, StagingArea.class);
+        StagingArea SA = StagingArea.load();
         if (SA.Add.isEmpty() && SA.Remove.isEmpty()){
             System.out.println("No changes added to the commit.");
             return;
         }
         // Obtain last commit
         String HEAD_Contents = readContentsAsString(HEAD);
-        Commit Parent_commit = readObject(join(Commits, HEAD_Contents), Commit.class);
+        Commit Parent_commit = ObjectStore.get_commit(HEAD_Contents);
 
         // Obtain Branch Control
-        Branch_Control branchcontrol = readObject(Branch_Control_file, Branch_Control.class);
+        Branch_Control branchcontrol = Branch_Control.load();
 
         if (merge){
             Branch_Contents = readContentsAsString(join(GITLET_DIR, branchname));
         }
 
+        commit(message, HEAD_Contents, Parent_commit, Branch_Contents, SA, branchcontrol);
+    }
+
+    /** Makes a commit with the given MESSAGE of the files staged in SA on top of PARENT_COMMIT, the HEAD commit
+     *  whose ID is HEAD_CONTENTS, and moves HEAD and the active branch to it. BRANCH_CONTENTS is the ID of the
+     *  head of the branch merged, or null if this is not a merge commit. The Staging Area is cleared. */
+    private static void commit(String message, String HEAD_Contents, Commit Parent_commit, String Branch_Contents,
+                               StagingArea SA, Branch_Control branchcontrol){
+
         // Create new Commit
         Commit New_commit = new Commit(message, HEAD_Contents, Branch_Contents, Parent_commit, SA, branchcontrol);
 
         // Write new Commit into commit file, where file name is the SHA1 hash of the commit object
-        String New_commit_ID = sha1(serialize(New_commit));
-        File Commit_File = join(Commits, New_commit_ID);
-        try {
-            Commit_File.createNewFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        writeObject(Commit_File, New_commit);
+        String New_commit_ID = ObjectStore.put_commit(New_commit);
+        CommitGraph graph = CommitGraph.load();
+        graph.append(New_commit_ID, New_commit);
+        ChangedPaths.load(graph);
+        CommitIndex.load().add(New_commit_ID);
+        MessageIndex.load().add(New_commit_ID, New_commit.message);
 
         // Update HEAD and branch pointers
         writeContents(HEAD, New_commit_ID);
@@ -235,85 +422,227 @@ public class Repository {
     public static void rm(String file_name) {
 
         // Retrieve Staging Area
-        StagingArea SA = readObject(StagingArea_file, StagingArea.class);
+        StagingArea SA = StagingArea.load();
 
         // Retrieve last commit
         String current_commit_ID = readContentsAsString(HEAD);
-        Commit current_commit = readObject(join(Commits, current_commit_ID), Commit.class);
+        Commit current_commit = ObjectStore.get_commit(current_commit_ID);
 
         // Check if file in last commit and change Staging Area
-        Boolean File_in_current_commit = current_commit.files.containsKey(file_name);
+        Boolean File_in_current_commit = current_commit.files().containsKey(file_name);
         boolean remove_success = SA.remove_file(file_name, File_in_current_commit);
         if (!remove_success){
             System.out.println("No reason to remove the file.");
         }
         // Update Staging Area
-        writeObject(StagingArea_file, SA);
+        SA.save();
     }
 
     /** Starting at the current head commit, method displays informatuion about each commit
-     *  backwards along the commit tree until the initial commit, following the default parent commit links. */
-    public static void log(){
+     *  backwards along the commit tree until the initial commit, following the default parent commit links.
+     *  Entries are written by WRITER, which stops the walk once it has written as many as it was asked for. */
+    public static void log(LogWriter writer){
 
-        // Retrieves HEAD commit
-        String curent_commitID = readContentsAsString(HEAD);
-        Commit current_commit = readObject(join(Commits, curent_commitID), Commit.class);
-        System.out.println("===");
-        System.out.println("commit " + readContentsAsString(HEAD));
-
-        // Check if HEAD commit is a merge commit
-        if (current_commit.Secondary_parent_commitID != null){
-            System.out.println(String.format("Merge: %7.7s %7.7s", current_commit.Default_parent_commitID, current_commit.Secondary_parent_commitID));
-        }
-        System.out.println(String.format("Date: %1$ta %1$tb %1$td %1$tT %1$tY %1$tz", current_commit.timestamp));
-        System.out.println(current_commit.message + "\n");
-
-        // Iteration down the line until initial commit with Default_parent_commitID == null is reached
-        while (current_commit.Default_parent_commitID != null) {
-            System.out.println("===");
-            System.out.println("commit " + current_commit.Default_parent_commitID);
-            current_commit = readObject(join(Commits, current_commit.Default_parent_commitID), Commit.class);
-            if (current_commit.Secondary_parent_commitID != null){
-                System.out.println(String.format("Merge: %7.7s %7.7s", current_commit.Default_parent_commitID, current_commit.Secondary_parent_commitID));
-            }
-            System.out.println(String.format("Date: %1$ta %1$tb %1$td %1$tT %1$tY %1$tz", current_commit.timestamp));
-            System.out.println(current_commit.message);
-            System.out.println("");
+        // Retrieves HEAD commit from the Commit Graph
+        CommitGraph graph = CommitGraph.load();
+        int current = graph.recent_index_of(readContentsAsString(HEAD));
+
+        // Iteration down the line until initial commit with no default parent is reached
+        try {
+            while (current != CommitGraph.NONE && !writer.done()) {
+                writer.write(graph, current);
+                current = graph.parents[current];
+            }
+            writer.flush();
+        } catch (IOException e){
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Like log, but displays only the commits that changed one of PATHS, files or directories, from their default
+     *  parent. Commits whose changed path filters (see ChangedPaths) show that they changed none of PATHS are
+     *  skipped without being read; the others are checked by comparing PATHS in their tree and their parent's.
+     *  This method is called by java gitlet.Main log -- [path]... */
+    public static void log(LogWriter writer, List<String> paths){
+        ArrayList<String> normalized = new ArrayList<>();
+        for (String path : paths){
+            path = path.replaceAll("^(\\./)+|/+$", "");
+            if (path.isEmpty() || path.equals(".")){
+                log(writer);
+                return;
+            }
+            normalized.add(path);
+        }
+        long[] hashes = new long[normalized.size()];
+        for (int p = 0; p < hashes.length; p++){
+            hashes[p] = ChangedPaths.hash(normalized.get(p));
+        }
+
+        CommitGraph graph = CommitGraph.load();
+        ChangedPaths filters = ChangedPaths.load(graph);
+        int current = graph.recent_index_of(readContentsAsString(HEAD));
+        int walked = 0;
+        int skipped = 0;
+        int false_positives = 0;
+        // Tree of the current commit, when it was read as the parent of the last commit checked
+        String treeID = null;
+        try {
+            while (current != CommitGraph.NONE && !writer.done()) {
+                walked += 1;
+                int parent = graph.parents[current];
+                boolean may_have_changed = false;
+                for (long hash : hashes){
+                    may_have_changed |= filters.may_contain(current, hash);
+                }
+                if (!may_have_changed){
+                    skipped += 1;
+                    treeID = null;
+                    current = parent;
+                    continue;
+                }
+                if (treeID == null){
+                    treeID = ObjectStore.get_commit(graph.ids[current]).tree();
+                }
+                String parent_treeID = parent == CommitGraph.NONE ? null : ObjectStore.get_commit(graph.ids[parent]).tree();
+                boolean changed = false;
+                for (String path : normalized){
+                    changed |= !Objects.equals(Tree.entry(treeID, path), Tree.entry(parent_treeID, path));
+                }
+                if (changed){
+                    writer.write(graph, current);
+                }
+                else {
+                    false_positives += 1;
+                }
+                treeID = parent_treeID;
+                current = parent;
+            }
+            writer.flush();
+        } catch (IOException e){
+            throw new IllegalArgumentException(e.getMessage());
         }
+        stats("log: %d commits walked, %d skipped by changed path filters, %d checked, %d false positives (%.2f%%)",
+                walked, skipped, walked - skipped, false_positives,
+                100.0 * false_positives / Math.max(1, skipped + false_positives));
     }
 
-    /** Displays information about all commits ever made.
+    /** Displays information about all commits ever made, written by WRITER.
      *  Order of commits does not matter. */
-    public static void global_log(){
-        List<String> list_of_files = plainFilenamesIn(Commits);
-        for (String commit_name : list_of_files){
-            System.out.println("===");
-            System.out.println("commit " + commit_name);
-            File commit_file = join(Commits, commit_name);
-            Commit commit = readObject(commit_file, Commit.class);
-            if (commit.Secondary_parent_commitID != null){
-                System.out.println(String.format("Merge: %7.7s %7.7s", commit.Default_parent_commitID, commit.Secondary_parent_commitID));
-            }
-            System.out.println(String.format("Date: %1$ta %1$tb %1$td %1$tT %1$tY %1$tz", commit.timestamp));
-            System.out.println(commit.message);
-            System.out.println("");
+    public static void global_log(LogWriter writer){
+        CommitGraph graph = CommitGraph.load();
+        try {
+            for (int i = 0; i < graph.size && !writer.done(); i++){
+                writer.write(graph, i);
+            }
+            writer.flush();
+        } catch (IOException e){
+            throw new IllegalArgumentException(e.getMessage());
         }
     }
 
     /** Prints out SHA1 hashes (IDs) of all commits that have the given commit message. */
     public static void find(String commit_message){
-        List<String> list_of_commits = plainFilenamesIn(Commits);
-        int count =0;
-        for (String commit_name : list_of_commits){
-            Commit commit = readObject(join(Commits, commit_name), Commit.class);
-            if (commit.message.equals(commit_message)) {
-                System.out.println(commit_name);
-                count+=1;
-            }
+        find(List.of(commit_message), commit_message::equals);
+    }
+
+    /** Prints out the IDs of all commits whose message contains TEXT.
+     *  This method is called by java gitlet.Main find --contains [text]. */
+    public static void find_containing(String text){
+        find(List.of(text), message -> message.contains(text));
+    }
+
+    /** Prints out the IDs of all commits whose message contains a match of the regular expression REGEX.
+     *  This method is called by java gitlet.Main find --regex [regular expression]. */
+    public static void find_matching(String regex){
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException e){
+            System.out.println("Invalid regular expression.");
+            return;
         }
-        if (count == 0){
+        find(MessageIndex.literals(regex), message -> pattern.matcher(message).find());
+    }
+
+    /** Prints out the IDs, in order, of all commits whose message MATCHES, looking them up in the Message Index
+     *  (see MessageIndex) so that no commit is read. Only messages containing all of LITERALS are checked. */
+    private static void find(List<String> literals, Predicate<String> matches){
+        MessageIndex index = MessageIndex.load();
+        List<String> found = index.find(literals, matches);
+        for (String commitID : found){
+            System.out.println(commitID);
+        }
+        if (found.isEmpty()){
             System.out.println("Found no commit with that message.");
         }
+        stats("find: %d of %d messages checked", index.checked, index.size());
+    }
+
+    /** Reports how many objects are stored and how much space content addressed blobs save.
+     *  Every distinct (filename, contents) pair across all commits would have been stored as its own blob
+     *  before blobs were named by content hash; now each distinct content is stored once. */
+    public static void count_objects(){
+        CommitGraph graph = CommitGraph.load();
+
+        // Size of every distinct file version, and of every distinct content
+        HashMap<String, Long> version_sizes = new HashMap<>();
+        HashMap<String, Long> content_sizes = new HashMap<>();
+        try (HistoryWalker commits = new HistoryWalker(Arrays.asList(graph.ids).subList(0, graph.size))){
+            while (commits.hasNext()){
+                Commit commit = commits.next();
+                for (Map.Entry<String, String> name_blobID : commit.files().entrySet()){
+                    String filename = name_blobID.getKey();
+                    String content_hash;
+                    long size;
+                    if (commit.headers() != null){
+                        content_hash = commit.headers().get(filename).content_compare;
+                        size = commit.headers().get(filename).size;
+                    }
+                    else {
+                        Blob.Header header = ObjectStore.read_header(name_blobID.getValue());
+                        content_hash = header.content_compare;
+                        size = header.size;
+                    }
+                    version_sizes.put(filename + "\0" + content_hash, size);
+                    content_sizes.put(content_hash, size);
+                }
+            }
+        }
+        long version_bytes = 0;
+        for (long size : version_sizes.values()){
+            version_bytes += size;
+        }
+        long content_bytes = 0;
+        for (long size : content_sizes.values()){
+            content_bytes += size;
+        }
+        long disk_bytes = 0;
+        List<String> blob_files = new ArrayList<>(plainFilenamesIn(Blobs));
+        blob_files.removeIf(name -> name.endsWith(".tmp"));
+        for (String blob_file : blob_files){
+            disk_bytes += join(Blobs, blob_file).length();
+        }
+
+        System.out.println("commits: " + graph.size);
+        System.out.println("blob files: " + blob_files.size() + " (" + disk_bytes + " bytes on disk)");
+        int packed_objects = 0;
+        long pack_bytes = 0;
+        for (Pack pack : Pack.all()){
+            packed_objects += pack.count;
+            pack_bytes += pack.pack_file.length() + pack.index_file.length();
+        }
+        System.out.println("packed objects: " + packed_objects + " in " + Pack.all().size() + " packs (" + pack_bytes + " bytes on disk)");
+        System.out.println("file versions: " + version_sizes.size() + " (" + version_bytes + " bytes)");
+        System.out.println("distinct contents: " + content_sizes.size() + " (" + content_bytes + " bytes)");
+        System.out.println(String.format("bytes saved by deduplication: %d (%.1f%%)", version_bytes - content_bytes,
+                version_bytes == 0 ? 0.0 : 100.0 * (version_bytes - content_bytes) / version_bytes));
+    }
+
+    /** Moves all loose commit and blob files into a pack, so that a repository with a long history
+     *  does not keep one file per object. Objects are read the same way whether loose or packed. */
+    public static void repack(){
+        int[] counts = ObjectStore.repack();
+        System.out.println("Packed " + counts[0] + " objects, " + counts[1] + " of them as deltas.");
     }
 
     /** Displays what branches currently exist, and marks the current branch with a *.
@@ -329,7 +658,7 @@ public class Repository {
     public static void status(){
 
         System.out.println("=== Branches ===");
-        Branch_Control branchcontrol = readObject(Branch_Control_file, Branch_Control.class);
+        Branch_Control branchcontrol = Branch_Control.load();
         for (String branch : branchcontrol.branchname_storage){
             if (branch.equals(branchcontrol.active_branch)){
                 System.out.println("*" + branch);
@@ -341,7 +670,7 @@ public class Repository {
         System.out.println("");
 
         System.out.println("=== Staged Files ===");
-        StagingArea SA = readObject(StagingArea_file, StagingArea.class);
+        StagingArea SA = StagingArea.load();
         Set<String> staged_addfilename_set = SA.Add.keySet();
         if (staged_addfilename_set.isEmpty()){
             System.out.println("");
@@ -370,51 +699,45 @@ public class Repository {
 
         System.out.println("=== Modifications Not Staged For Commit ===");
         ArrayList<String> files_modified = new ArrayList<>();
-        ArrayList<String> files_in_CWD = new ArrayList<>(plainFilenamesIn(CWD));
+        ArrayList<String> untracked = new ArrayList<>();
 
         String HEAD_commitID = readContentsAsString(HEAD);
-        Commit HEAD_Commit = readObject(join(Commits, HEAD_commitID), Commit.class);
-
-        // Check for deleted files present in Commit but missing in Staging Area and CWD
-        for (String deleted_file_in_commit : HEAD_Commit.files.keySet()){
-            Boolean StagingArea_containsfile = SA.Add.containsKey(deleted_file_in_commit) || SA.Remove.contains(deleted_file_in_commit);
-            if (!files_in_CWD.contains(deleted_file_in_commit) && !StagingArea_containsfile){
-                files_modified.add(deleted_file_in_commit + " (deleted)");
+        Commit HEAD_Commit = ObjectStore.get_commit(HEAD_commitID);
+
+        // Compare the tree of the last commit with that of the working directory, using the Stat Cache to skip files
+        // that have not changed since they were last hashed. Only the files that differ need looking at.
+        StatCache cache = StatCache.load();
+        HashMap<String, Tree> trees = new HashMap<>();
+        TreeDiff diff = new TreeDiff(trees);
+        for (TreeDiff.Change change : diff.diff(HEAD_Commit.tree(), working_tree(cache, HEAD_Commit, trees))){
+            boolean StagingArea_containsfile = SA.Add.containsKey(change.path) || SA.Remove.contains(change.path);
+            // Deleted files present in Commit but missing in Staging Area and CWD
+            if (change.after == null && !StagingArea_containsfile){
+                files_modified.add(change.path + " (deleted)");
             }
-        }
-        // Check for deleted files present in Staging Area but missing in Commit and CWD
-        for (String deleted_file_in_SA : SA.Add.keySet()) {
-            if (!files_in_CWD.contains(deleted_file_in_SA)) {
-                if (!files_modified.contains(deleted_file_in_SA)) {
-                    files_modified.add(deleted_file_in_SA + " (deleted)");
-                }
+            // A file missing in both Staging Area (Add) and last commit is untracked. Added to list tracking untrackd files.
+            else if (change.before == null && !SA.Add.containsKey(change.path)){
+                untracked.add(change.path);
+            }
+            // Modified files present in Commit, which are checked against the Staging Area below if staged
+            else if (change.before != null && change.after != null && !SA.Add.containsKey(change.path)){
+                files_modified.add(change.path + " (modified)");
             }
         }
 
-        // Check for modified files
-        for (String modified_file : files_in_CWD){
-            if (SA.Add.containsKey(modified_file)){
-                String file_content_hash = sha1(readContents(join(CWD,modified_file)));
-                String SA_blob_content = SA.Add.get(modified_file).content_compare;
-                if (!file_content_hash.equals(SA_blob_content)){
-                    if (!files_modified.contains(modified_file)){
-                        files_modified.add(modified_file + " (modified)");
-                    }
-                }
+        // Check for files in Staging Area that are deleted from CWD or modified since they were staged
+        for (Map.Entry<String, Blob> staged_file : SA.Add.entrySet()) {
+            String filename = staged_file.getKey();
+            if (!join(CWD, filename).isFile()) {
+                files_modified.add(filename + " (deleted)");
             }
-            else {
-                if (HEAD_Commit.files.containsKey(modified_file)) {
-                    String file_content_hash_commit = sha1(readContents(join(CWD, modified_file)));
-                    String commit_blobID = HEAD_Commit.files.get(modified_file);
-                    Blob commitblob = readObject(join(Blobs, commit_blobID), Blob.class);
-                    if (!file_content_hash_commit.equals(commitblob.content_compare)) {
-                        if (!files_modified.contains(modified_file)) {
-                            files_modified.add(modified_file + " (modified)");
-                        }
-                    }
-                }
+            else if (!cache.hash(filename).equals(staged_file.getValue().content_compare)){
+                files_modified.add(filename + " (modified)");
             }
         }
+        cache.save();
+        cache.report();
+        stats("status: %d trees read, %d skipped", diff.trees_read, diff.trees_skipped);
 
         if (files_modified.isEmpty()){
             System.out.println("");
@@ -429,13 +752,6 @@ public class Repository {
         }
 
         System.out.println("=== Untracked Files ===");
-        ArrayList<String> untracked = new ArrayList<>();
-        for (String CWD_files : plainFilenamesIn(CWD)){
-            // A file missing in both Staging Area (Add) and last commit is untracked. Added to list tracking untrackd files.
-            if (!HEAD_Commit.files.containsKey(CWD_files) && !SA.Add.containsKey(CWD_files)){
-                untracked.add(CWD_files);
-            }
-        }
         if (untracked.isEmpty()){
             System.out.println("\n");
         }
@@ -448,6 +764,82 @@ public class Repository {
         }
     }
 
+    /** Shows the changes made to files in the working directory that are not staged, as a unified diff against
+     *  their version in the Staging Area, or in the head commit if they are not staged. Untracked files are not
+     *  shown. Only files whose size or modification time changed since the Stat Cache last saw them are read.
+     *  This method is called by java gitlet.Main diff. */
+    public static void diff(){
+        StagingArea SA = StagingArea.load();
+        Commit HEAD_commit = ObjectStore.get_commit(readContentsAsString(HEAD));
+
+        // The version of each tracked file that a commit would take: the head commit's, changed by the Staging Area
+        TreeMap<String, Blob.Header> tracked = new TreeMap<>();
+        Tree.flatten(HEAD_commit.tree(), "", new TreeMap<>(), tracked);
+        tracked.keySet().removeAll(SA.Remove);
+        for (Map.Entry<String, Blob> name_blob : SA.Add.entrySet()){
+            tracked.put(name_blob.getKey(), name_blob.getValue().header());
+        }
+
+        // The tracked files as they are in the working directory, hashed only if they may be unchanged
+        StatCache cache = StatCache.load();
+        TreeMap<String, Blob.Header> working = new TreeMap<>();
+        for (Map.Entry<String, Blob.Header> name_header : tracked.entrySet()){
+            File file = join(CWD, name_header.getKey());
+            if (file.isFile()){
+                long size = file.length();
+                String hash = size == name_header.getValue().size ? cache.hash(name_header.getKey()) : UNHASHED;
+                working.put(name_header.getKey(), new Blob.Header(hash, size));
+            }
+        }
+        cache.save();
+
+        HashMap<String, Tree> trees = new HashMap<>();
+        print_diff(new TreeDiff(trees), Tree.build(tracked, trees), Tree.build(working, trees), true);
+    }
+
+    /** Shows the changes staged for the next commit, as a unified diff against the head commit.
+     *  This method is called by java gitlet.Main diff --staged. */
+    public static void diff_staged(){
+        StagingArea SA = StagingArea.load();
+        Commit HEAD_commit = ObjectStore.get_commit(readContentsAsString(HEAD));
+        TreeMap<String, Blob.Header> added = new TreeMap<>();
+        for (Map.Entry<String, Blob> name_blob : SA.Add.entrySet()){
+            added.put(name_blob.getKey(), name_blob.getValue().header());
+        }
+        HashMap<String, Tree> trees = new HashMap<>();
+        print_diff(new TreeDiff(trees), HEAD_commit.tree(), Tree.build(HEAD_commit.tree(), added, SA.Remove, trees), false);
+    }
+
+    /** Shows the changes from the commit with ID FROM_COMMITID to the commit with ID TO_COMMITID, as a unified diff.
+     *  This method is called by java gitlet.Main diff [commit id] [commit id]. */
+    public static void diff(String from_commitID, String to_commitID){
+        from_commitID = find_commit(from_commitID);
+        to_commitID = from_commitID == null ? null : find_commit(to_commitID);
+        if (to_commitID == null){
+            return;
+        }
+        Commit from_commit = ObjectStore.get_commit(from_commitID);
+        Commit to_commit = ObjectStore.get_commit(to_commitID);
+        print_diff(new TreeDiff(), from_commit.tree(), to_commit.tree(), false);
+    }
+
+    /** Prints the changes between the trees BEFOREID and AFTERID found by DIFF, file by file, as a unified diff.
+     *  If WORKING is true, the files after the changes are read from the working directory. */
+    private static void print_diff(TreeDiff diff, String beforeID, String afterID, boolean working){
+        OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+        UnifiedDiff unified = new UnifiedDiff(out);
+        try {
+            for (TreeDiff.Change change : diff.diff(beforeID, afterID)){
+                File after_file = working && change.after != null ? join(CWD, change.path) : null;
+                unified.write(change.path, change.before, change.after, after_file);
+            }
+            out.flush();
+        } catch (IOException e){
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        stats("diff: %d trees read, %d skipped", diff.trees_read, diff.trees_skipped);
+    }
+
     /** Takes the version of the files as it exists in the head commit
      *  and puts it in the working directory, overwriting the version of the file
      *  that is already there (if any). The new version of file is not staged.
@@ -455,17 +847,20 @@ public class Repository {
     public static void checkout1(String filename) {
         //Retrieve last commit
         String HEAD_COMMITID = readContentsAsString(HEAD);
-        Commit HEAD_COMMIT = readObject(join(Commits, HEAD_COMMITID), Commit.class);
+        Commit HEAD_COMMIT = ObjectStore.get_commit(HEAD_COMMITID);
 
-        if (!HEAD_COMMIT.files.containsKey(filename)){
+        if (!HEAD_COMMIT.files().containsKey(filename)){
             System.out.println("File does not exist in that commit.");
         }
         else{
-            //Get blobID (blob file name) to retrieve blob object
-            String blobID = HEAD_COMMIT.files.get(filename);
-            Blob blob = readObject(join(Blobs, blobID), Blob.class);
+            //Get blobID (blob file name) to retrieve blob contents
+            String blobID = HEAD_COMMIT.files().get(filename);
             //Write contents to file, creating or overwriting the file as needed
-            writeContents(join(CWD, filename), blob.contents);
+            String content_hash = ObjectStore.write_to(blobID, join(CWD, filename));
+
+            StatCache cache = StatCache.load();
+            cache.record(filename, content_hash, blobID);
+            cache.save();
         }
     }
 
@@ -474,22 +869,21 @@ public class Repository {
      *  The new version of the file is not staged.
      *  Checkout2 is called by java gitlet.Main checkout [commit ID] -- [file name]. */
     public static void checkout2(String commitID, String filename){
-        List<String> list_of_commits = plainFilenamesIn(Commits);
-        if (!list_of_commits.contains(commitID)){
-            System.out.println("No commit with that id exists.");
-        }
-        else {
+        commitID = find_commit(commitID);
+        if (commitID != null){
             // Retrieve target commit
-            Commit target_commit = readObject(join(Commits, commitID), Commit.class);
-            if (!target_commit.files.containsKey(filename)){
+            Commit target_commit = ObjectStore.get_commit(commitID);
+            if (!target_commit.files().containsKey(filename)){
                 System.out.println("File does not exist in that commit.");
             }
             else {
-                // Retrieve blob of file in target commit
-                String blobID = target_commit.files.get(filename);
-                Blob blob = readObject(join(Blobs, blobID), Blob.class);
-                // Write blob content into file in CWD
-                writeContents(join(CWD, filename), blob.contents);
+                // Write blob content of file in target commit into file in CWD
+                String blobID = target_commit.files().get(filename);
+                String content_hash = ObjectStore.write_to(blobID, join(CWD, filename));
+
+                StatCache cache = StatCache.load();
+                cache.record(filename, content_hash, blobID);
+                cache.save();
             }
         }
     }
@@ -501,7 +895,7 @@ public class Repository {
      *  The staging area is cleared unless checked out branch is the current branch.
      *  This method is called by java gitlet.Main checkout [branch name]. */
     public static void checkout3(String branchname){
-        Branch_Control branchcontrol = readObject(Branch_Control_file, Branch_Control.class);
+        Branch_Control branchcontrol = Branch_Control.load();
         if (!branchcontrol.branchname_storage.contains(branchname)){
             System.out.println("No such branch exists.");
         }
@@ -521,7 +915,7 @@ public class Repository {
 
             // Branch control updates active branch to given branch
             branchcontrol.active_branch = branchname;
-            writeObject(Branch_Control_file, branchcontrol);
+            branchcontrol.save();
 
             // HEAD is updated to given branch's headID
             writeContents(HEAD, branch_headID);
@@ -530,60 +924,104 @@ public class Repository {
 
 
     /** This method takes care of changing all tracked files in CWD to those in branch commit,
-     *  and then clears the Staging Area. */
+     *  and then clears the Staging Area.
+     *  Only files that differ are touched: the tree of the working directory is compared with the tree of
+     *  branch commit (see TreeDiff), and only the files it shows as added, changed or removed are written or deleted. */
     private static void helpercheckout3(String branch_headID){
 
         //Retrieves branch commit and HEAD commit
-        Commit branch_head = readObject(join(Commits, branch_headID), Commit.class);
-        Commit HEAD_commit = readObject(join(Commits, readContentsAsString(HEAD)), Commit.class);
-
-        //Retrieves Staging Area
-        StagingArea SA = readObject(StagingArea_file, StagingArea.class);
-
-        //Delete all files in CWD present in commit
-        for (String file : HEAD_commit.files.keySet()){
-            File file_to_delete = join(CWD, file);
-            restrictedDelete(file_to_delete);
+        Commit branch_head = ObjectStore.get_commit(branch_headID);
+        Commit HEAD_commit = ObjectStore.get_commit(readContentsAsString(HEAD));
+
+        //Retrieves Staging Area and Stat Cache
+        StagingArea SA = StagingArea.load();
+        StatCache cache = StatCache.load();
+
+        //Find the files whose version in CWD differs from branch commit
+        HashMap<String, Tree> trees = new HashMap<>();
+        String working_treeID = working_tree(cache, HEAD_commit, trees);
+        TreeDiff diff = new TreeDiff(trees);
+        ArrayList<String> to_write = new ArrayList<>();
+        ArrayList<String> to_write_blobIDs = new ArrayList<>();
+        ArrayList<File> to_write_files = new ArrayList<>();
+        ArrayList<String> to_delete = new ArrayList<>();
+        for (TreeDiff.Change change : diff.diff(working_treeID, branch_head.tree())){
+            if (change.after == null){
+                to_delete.add(change.path);
+            }
+            else {
+                to_write.add(change.path);
+                to_write_blobIDs.add(change.after.content_compare);
+                to_write_files.add(join(CWD, change.path));
+            }
         }
 
-        //Delete all files in CWD present in Staging Area
-        for (String file : SA.Add.keySet()){
-            File file_to_deletefromADDSA = join(CWD, file);
-            restrictedDelete(file_to_deletefromADDSA);
-        }
-        for (String file : SA.Remove){
-            File file_to_deletefromRemoveSA = join(CWD, file);
-            restrictedDelete(file_to_deletefromRemoveSA);
+        //Write their contents aside first, so that CWD is left as it is if any of them cannot be read
+        long start = System.nanoTime();
+        Materializer materializer = new Materializer(to_write_blobIDs, to_write_files);
+        materializer.prepare();
+
+        //Delete files in CWD present in commit or Staging Area, but not in branch commit
+        int deleted = 0;
+        for (String file : to_delete){
+            if (HEAD_commit.files().containsKey(file) || SA.Add.containsKey(file)){
+                delete_working_file(file);
+                deleted += 1;
+            }
         }
 
-        //Add all files from branch commit to CWD
-        for (Map.Entry<String, String> filename_fileID : branch_head.files.entrySet()){
-
-            //Retrieve file blob
-            File file_from_commit = join(Blobs, filename_fileID.getValue());
-            Blob blob_from_commit = readObject(file_from_commit, Blob.class);
-
-            //Create file from branch commit in CWD and write Contents
-            File file_working_directory = join(CWD, filename_fileID.getKey());
-            writeContents(file_working_directory, blob_from_commit.contents);
-
+        //Move the files from branch commit into CWD, recording them in the Stat Cache
+        List<String> content_hashes = materializer.finish();
+        for (int i = 0; i < to_write.size(); i++){
+            cache.record(to_write.get(i), content_hashes.get(i), to_write_blobIDs.get(i));
         }
+        int written = to_write.size();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        cache.save();
         SA.clean();
-        writeObject(StagingArea_file, SA);
+        SA.save();
+        stats("checkout: %d files written, %d deleted, %d trees read, %d skipped", written, deleted, diff.trees_read, diff.trees_skipped);
+        stats("checkout: wrote %d files in %.0f ms on %d threads: %.0f files/s", written, seconds * 1000,
+                Parallel.threads(), written / seconds);
+        stats("delta cache: %d rebuilt, %d reused", ObjectStore.rebuilt_misses, ObjectStore.rebuilt_hits);
+        cache.report();
+    }
+
+    /** Content hash standing for a file whose contents were not hashed, because they are known to differ from
+     *  the version it is compared with, or do not matter. No contents hash to it. */
+    private static final String UNHASHED = "0".repeat(UID_LENGTH);
+
+    /** Builds the tree of the working directory in TREES, without storing it, and returns its tree ID (see Tree.build).
+     *  Files are only hashed if they are tracked by HEAD_COMMIT, have the same size as their version there, and
+     *  the Stat Cache does not know their hash; other files the Stat Cache does not know are given the hash UNHASHED. */
+    private static String working_tree(StatCache cache, Commit HEAD_commit, Map<String, Tree> trees){
+        TreeMap<String, Blob.Header> files = new TreeMap<>();
+        TreeMap<String, Blob.Header> committed = HEAD_commit.headers();
+        for (String filename : working_files()){
+            long size = join(CWD, filename).length();
+            String hash = cache.cached_hash(filename);
+            if (hash == null){
+                boolean tracked = HEAD_commit.files().containsKey(filename);
+                boolean same_size = committed == null || (tracked && committed.get(filename).size == size);
+                hash = tracked && same_size ? cache.hash(filename) : UNHASHED;
+            }
+            files.put(filename, new Blob.Header(hash, size));
+        }
+        return Tree.build(files, trees);
     }
 
     /** Returns true if there is untracked file in CWD, false otherwise. */
     private static boolean if_untracked(){
 
         //Retrieves Staging Area and last commit
-        StagingArea stagingArea = readObject(StagingArea_file, StagingArea.class);
+        StagingArea stagingArea = StagingArea.load();
         String HEADcommitID = readContentsAsString(HEAD);
-        Commit HEADcommit = readObject(join(Commits, HEADcommitID), Commit.class);
+        Commit HEADcommit = ObjectStore.get_commit(HEADcommitID);
 
         // Iterate over all files in CWD
         // If file does not exist in both last commit and Staging Area, method returns true.
-        for (String filenames_in_CWD : plainFilenamesIn(CWD)){
-            boolean file_not_in_commit = !HEADcommit.files.containsKey(filenames_in_CWD);
+        for (String filenames_in_CWD : working_files()){
+            boolean file_not_in_commit = !HEADcommit.files().containsKey(filenames_in_CWD);
             boolean file_not_in_SA = !stagingArea.Add.containsKey(filenames_in_CWD) && !stagingArea.Remove.contains(filenames_in_CWD);
             boolean untracked = file_not_in_SA &&  file_not_in_commit;
             if (untracked){
@@ -600,7 +1038,7 @@ public class Repository {
         // Create new branch file
         File new_branch = join(GITLET_DIR, branch_name);
         // Retrieve Branch Control object
-        Branch_Control branchcontrol = readObject(Branch_Control_file, Branch_Control.class);
+        Branch_Control branchcontrol = Branch_Control.load();
         if (branchcontrol.branchname_storage.contains(branch_name)){
             System.out.println("A branch with that name already exists.");
             return;
@@ -611,7 +1049,7 @@ public class Repository {
         writeContents(new_branch, current_head_commitID);
         // Add branch to Branch Control
         branchcontrol.add_branch(branch_name);
-        writeObject(Branch_Control_file, branchcontrol);
+        branchcontrol.save();
     }
 
     /** Deletes branch with the given name.
@@ -619,7 +1057,7 @@ public class Repository {
      *  This command DOES NOT delete all commits created under the branch. */
     public static void rm_branch(String branchname){
         // Retrieve Branch Control
-        Branch_Control branchcontrol = readObject(Branch_Control_file, Branch_Control.class);
+        Branch_Control branchcontrol = Branch_Control.load();
         if (!branchcontrol.branchname_storage.contains(branchname)){
             System.out.println("A branch with that name does not exist.");
         }
@@ -634,27 +1072,47 @@ public class Repository {
             File deleted_branch_pointer = join(GITLET_DIR, branchname);
             deleted_branch_pointer.delete();
 
-            writeObject(Branch_Control_file, branchcontrol);
+            branchcontrol.save();
         }
     }
 
+    /** Returns the full ID of the commit named by COMMITID, which is either its whole ID or any prefix of it that no
+     *  other commit ID starts with, or null after printing why no single commit is named. Prefixes are looked up by
+     *  binary search in the Commit Index (see CommitIndex). */
+    static String find_commit(String commitID){
+        if (commitID.length() == UID_LENGTH && ObjectStore.has_commit(commitID)){
+            return commitID;
+        }
+        List<String> found = commitID.isEmpty() ? List.of() : CommitIndex.load().find(commitID, 2);
+        if (found.size() == 1){
+            return found.get(0);
+        }
+        if (found.isEmpty()){
+            System.out.println("No commit with that id exists.");
+        }
+        else {
+            System.out.println("Commit id " + commitID + " is ambiguous; more than one commit id starts with it.");
+        }
+        return null;
+    }
+
     /** Checks out all files tracked by the given commit.
      *  Removes tracked files that are not present in that commit.
      *  Moves HEAD and branch pointer of given commit to that commit node and clears the staging area.
      *  Similar to git reset --hard [commit hash]. */
     public static void reset(String commitID){
 
-        File commitfile = join(Commits, commitID);
-        Branch_Control branchctrl = readObject(Branch_Control_file, Branch_Control.class);
-        if (!commitfile.exists()){
-            System.out.println("No commit with that id exists.");
+        Branch_Control branchctrl = Branch_Control.load();
+        commitID = find_commit(commitID);
+        if (commitID == null){
+            return;
         }
-        else if (if_untracked()){
+        if (if_untracked()){
             System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
         }
         else {
             // Retrieve Commit and its branch
-            Commit commit_to_reset_to = readObject(commitfile, Commit.class);
+            Commit commit_to_reset_to = ObjectStore.get_commit(commitID);
             String branchname = commit_to_reset_to.branchname;
 
             // Checks out all files to commit and clears staging area
@@ -662,7 +1120,7 @@ public class Repository {
 
             // Update active branch to given branch
             branchctrl.active_branch = branchname;
-            writeObject(Branch_Control_file, branchctrl);
+            branchctrl.save();
 
             // Update HEAD and branch pointers to given Commit
             writeContents(join(GITLET_DIR, branchname), commitID);
@@ -709,8 +1167,8 @@ public class Repository {
 
         Boolean is_merge_conflict = false;
 
-        StagingArea SA = readObject(StagingArea_file, StagingArea.class);
-        Branch_Control BranchControl = readObject(Branch_Control_file, Branch_Control.class);
+        StagingArea SA = StagingArea.load();
+        Branch_Control BranchControl = Branch_Control.load();
 
         if (!SA.isEmpty()){
            System.out.println("You have uncommitted changes.");
@@ -750,206 +1208,122 @@ public class Repository {
        }
 
        // Retrieve HEAD, Branch, Split Point Commits
-       Commit Current_HEAD = readObject(join(Commits, HEAD_ID), Commit.class);
-       Commit Branch_HEAD = readObject(join(Commits, Branch_Head_ID), Commit.class);
-       Commit Split_Point = readObject(join(Commits, split_point_ID), Commit.class);
-
-
-      // Created clones of Commit.file to prevent modifying the actual commit.files.
-      // These clones are used to keep track of the blobs in the Commit.files to update each file according to merge behaviour
-       Map<String, String> Current_HEAD_Blobs = (Map<String, String>) Current_HEAD.files.clone();
-       //Consolidate elements to be removed here and remove at end of for-each loop, prevents ConcurrentModificationException.
-       ArrayList<String> Current_HEAD_Blobs_toremove = new ArrayList<>();
-
-       Map<String, String> Branch_HEAD_Blobs = (Map<String, String>) Branch_HEAD.files.clone();
-       ArrayList<String> Branch_HEAD_Blobs_toremove = new ArrayList<>();
-
-       Map<String, String> Split_Point_Blobs = (Map<String, String>) Split_Point.files.clone();
-
-       for (Map.Entry<String, String> split_point_files : Split_Point_Blobs.entrySet()){
-           String split_point_files_key = split_point_files.getKey();
-           String split_point_files_valueID = split_point_files.getValue();
-
-           // Settle files that are present in both Current and Branches from split point
-           if (Branch_HEAD_Blobs.containsKey(split_point_files_key) && Current_HEAD_Blobs.containsKey(split_point_files_key)){
-
-               // Behaviour 1: Modified in given but not in current from split point
-               if (!Branch_HEAD_Blobs.get(split_point_files_key).equals(split_point_files_valueID) && Current_HEAD_Blobs.get(split_point_files_key).equals(split_point_files_valueID)){
-                   checkout2(Branch_Head_ID, split_point_files_key);
-                   add(split_point_files_key);
-                   Branch_HEAD_Blobs_toremove.add(split_point_files_key);
-                   Current_HEAD_Blobs_toremove.add(split_point_files_key);
+       Commit Current_HEAD = ObjectStore.get_commit(HEAD_ID);
+       Commit Branch_HEAD = ObjectStore.get_commit(Branch_Head_ID);
+       Commit Split_Point = ObjectStore.get_commit(split_point_ID);
+
+
+       // The merge is planned in memory first: the files to take from the given branch, to remove, and to write
+       // with conflict markers. Only files that differ between current and given branch, and that the given branch
+       // changed since split point, need merging; all other files stay as they are in current branch
+       // (behaviours 2, 3, 4 and 7).
+       TreeDiff diff = new TreeDiff();
+       ArrayList<String> taken = new ArrayList<>();
+       ArrayList<Blob.Header> taken_headers = new ArrayList<>();
+       ArrayList<String> removed = new ArrayList<>();
+       ArrayList<TreeDiff.Merge> conflicts = new ArrayList<>();
+       for (TreeDiff.Merge file : diff.diff3(Split_Point.tree(), Current_HEAD.tree(), Branch_HEAD.tree())){
+
+           // Behaviours 1, 5 and 6: Unmodified in current from split point, so the version in given branch is taken
+           if (TreeDiff.same(file.base, file.ours)){
+               if (file.theirs != null){
+                   taken.add(file.path);
+                   taken_headers.add(file.theirs);
                }
-
-               // Behaviour 2: Modified in current but not in given from split point
-               if (!Current_HEAD_Blobs.get(split_point_files_key).equals(split_point_files_valueID) && Branch_HEAD_Blobs.get(split_point_files_key).equals(split_point_files_valueID)){
-                   Branch_HEAD_Blobs_toremove.add(split_point_files_key);
-                   Current_HEAD_Blobs_toremove.add(split_point_files_key);
+               else {
+                   removed.add(file.path);
                }
-
-               // Behaviour 3: Modified in both from split point in the same way; no code for this since file in current will remain the same
-
-               // Behaviour 8a: Modified in both from split point but in different ways
-               if (!Branch_HEAD_Blobs.get(split_point_files_key).equals(split_point_files_valueID) && !Current_HEAD_Blobs.get(split_point_files_key).equals(split_point_files_valueID) && !Branch_HEAD_Blobs.get(split_point_files_key).equals(Current_HEAD_Blobs.get(split_point_files_key))){
-
-                   // Get contents of file from branch commit
-                   File Branch_blob_file = join(Blobs, Branch_HEAD_Blobs.get(split_point_files_key));
-                   Blob Branch_blob = readObject(Branch_blob_file, Blob.class);
-                   String Branch_blob_content = new String(Branch_blob.contents, StandardCharsets.UTF_8);
-
-                   // Get contents of file from current commit
-                   File Current_blob_file = join(Blobs, Current_HEAD_Blobs.get(split_point_files_key));
-                   Blob Current_blob = readObject(Current_blob_file, Blob.class);
-                   String Current_blob_content = new String(Current_blob.contents, StandardCharsets.UTF_8);
-
-                   // Construct merge conflict String, write to file, and stage file
-                   merge_conflict(split_point_files_key, Current_blob_content, Branch_blob_content);
-                   Branch_HEAD_Blobs_toremove.add(split_point_files_key);
-                   Current_HEAD_Blobs_toremove.add(split_point_files_key);
-                   System.out.println("Encountered a merge conflict.");
-               }
-           }
-
-           // Behaviour 8b: Branch file changed from split point and split point file in current deleted
-           if (Branch_HEAD_Blobs.containsKey(split_point_files_key) && !Branch_HEAD_Blobs.get(split_point_files_key).equals(split_point_files_valueID) && !Current_HEAD_Blobs.containsKey(split_point_files_key)){
-               Blob branchblob = readObject(join(Blobs, Branch_HEAD_Blobs.get(split_point_files_key)), Blob.class);
-               String Branch_file_Content = new String(branchblob.contents, StandardCharsets.UTF_8);
-               is_merge_conflict = merge_conflict(split_point_files_key ,"", Branch_file_Content);
-               Branch_HEAD_Blobs_toremove.add(split_point_files_key);
-           }
-
-           // Behaviour 8b: Current file changed from split point and split point file in branch deleted
-           if (Current_HEAD_Blobs.containsKey(split_point_files_key) && !Current_HEAD_Blobs.get(split_point_files_key).equals(split_point_files_valueID) && !Branch_HEAD_Blobs.containsKey(split_point_files_key)){
-               Blob currentblob = readObject(join(Blobs, Current_HEAD_Blobs.get(split_point_files_key)), Blob.class);
-               String Current_file_Content = new String(currentblob.contents, StandardCharsets.UTF_8);
-               is_merge_conflict = merge_conflict(split_point_files_key ,Current_file_Content, "");
-               Current_HEAD_Blobs_toremove.add(split_point_files_key);
            }
 
-           // Behaviour 6: File present at split, unmodified in current, absent in given
-           if (Current_HEAD_Blobs.containsKey(split_point_files_key) && Current_HEAD_Blobs.get(split_point_files_key).equals(split_point_files_valueID) && !Branch_HEAD_Blobs.containsKey(split_point_files_key)){
-               rm(split_point_files_key);
-               Current_HEAD_Blobs_toremove.add(split_point_files_key);
-           }
-
-           // Behaviour 7: File present at split, unmodified in given, absent in current
-           if (Branch_HEAD_Blobs.containsKey(split_point_files_key) && Branch_HEAD_Blobs.get(split_point_files_key).equals(split_point_files_valueID) && !Current_HEAD_Blobs.containsKey(split_point_files_key)){
-               Branch_HEAD_Blobs_toremove.add(split_point_files_key);
+           // Behaviour 8: Modified in both from split point but in different ways, merged line by line when
+           // changed in both (8a), or in conflict as a whole when deleted in one (8b) or absent at split point (8c)
+           else {
+               conflicts.add(file);
            }
        }
-       Current_HEAD_Blobs.keySet().removeAll(Current_HEAD_Blobs_toremove);
-       Branch_HEAD_Blobs.keySet().removeAll(Branch_HEAD_Blobs_toremove);
 
-       // Behaviour 4: Files not present at split point and present only in current branch
-       for (Map.Entry<String, String> current_files : Current_HEAD_Blobs.entrySet()){
-           if (!Split_Point_Blobs.containsKey(current_files.getKey()) && !Branch_HEAD_Blobs.containsKey(current_files.getKey())){
-               Current_HEAD_Blobs_toremove.add(current_files.getKey());
-           }
+       // The plan is then applied in one pass: the files taken are written together (see Materializer), and the
+       // Staging Area and Stat Cache are only kept in memory until the merge commit is made.
+       ArrayList<String> taken_blobIDs = new ArrayList<>(taken.size());
+       ArrayList<File> taken_files = new ArrayList<>(taken.size());
+       for (int i = 0; i < taken.size(); i++){
+           taken_blobIDs.add(taken_headers.get(i).content_compare);
+           taken_files.add(join(CWD, taken.get(i)));
        }
-       Current_HEAD_Blobs.keySet().removeAll(Current_HEAD_Blobs_toremove);
-
-       // Behaviour 5: Files not present at split point and present only in given branch
-       for (Map.Entry<String, String> branch_files : Branch_HEAD_Blobs.entrySet()){
-           if (!Split_Point_Blobs.containsKey(branch_files.getKey()) && !Current_HEAD_Blobs.containsKey(branch_files.getKey())){
-               checkout2(Branch_Head_ID, branch_files.getKey());
-               add(branch_files.getKey());
-               Branch_HEAD_Blobs_toremove.add(branch_files.getKey());
-           }
+       Materializer materializer = new Materializer(taken_blobIDs, taken_files);
+       materializer.prepare();
+       List<String> hashes = materializer.finish();
+
+       StatCache cache = StatCache.load();
+       for (int i = 0; i < taken.size(); i++){
+           cache.record(taken.get(i), hashes.get(i), taken_blobIDs.get(i));
+           SA.Add.put(taken.get(i), new Blob(taken.get(i), taken_headers.get(i)));
        }
-       Branch_HEAD_Blobs.keySet().removeAll(Branch_HEAD_Blobs_toremove);
-
-       // Behaviour 8c: File absent at split point and has different contents in given and current branches
-       for (Map.Entry<String, String> Curr_file : Current_HEAD_Blobs.entrySet()){
-           if (Branch_HEAD_Blobs.containsKey(Curr_file.getKey()) && !Curr_file.getValue().equals(Branch_HEAD_Blobs.get(Curr_file.getKey()))){
-               Blob Curr_file_blob = readObject(join(Blobs, Curr_file.getValue()), Blob.class);
-               String Curr_file_contents = new String(Curr_file_blob.contents, StandardCharsets.UTF_8);
-
-               Blob Branch_file_blob = readObject(join(Blobs, Branch_HEAD_Blobs.get(Curr_file.getKey())), Blob.class);
-               String Branch_file_contents = new String(Branch_file_blob.contents, StandardCharsets.UTF_8);
-               is_merge_conflict = merge_conflict(Curr_file.getKey(),Curr_file_contents, Branch_file_contents);
-               Branch_HEAD_Blobs_toremove.add(Curr_file.getKey());
-               Current_HEAD_Blobs_toremove.add(Curr_file.getKey());
+       for (String filename : removed){
+           SA.remove_file(filename, true);
+       }
+       int merged = 0;
+       for (TreeDiff.Merge conflict : conflicts){
+           File file = join(CWD, conflict.path);
+           if (!merge_file(conflict, file)){
+               merged += 1;
+           }
+           else if (conflict.base != null && conflict.ours != null && conflict.theirs != null){
+               System.out.println("Encountered a merge conflict.");
+           }
+           else {
+               is_merge_conflict = true;
+           }
+           Blob.Header header = ObjectStore.put_file(file);
+           cache.record(conflict.path, header.content_compare, header.content_compare);
+           if (!TreeDiff.same(header, conflict.ours)){
+               SA.Add.put(conflict.path, new Blob(conflict.path, header));
            }
        }
-       Branch_HEAD_Blobs.keySet().removeAll(Branch_HEAD_Blobs_toremove);
-       Current_HEAD_Blobs.keySet().removeAll(Current_HEAD_Blobs_toremove);
+       cache.save();
+       stats("merge: %d files taken, %d removed, %d merged by line, %d in conflict, %d trees read, %d skipped", taken.size(),
+               removed.size(), merged, conflicts.size() - merged, diff.trees_read, diff.trees_skipped);
 
        String commmit_message = "Merged " + branchname + " into " + BranchControl.active_branch + ".";
-       commit(commmit_message, true, branchname);
+       if (SA.isEmpty()){
+           System.out.println("No changes added to the commit.");
+       }
+       else {
+           commit(commmit_message, HEAD_ID, Current_HEAD, Branch_Head_ID, SA, BranchControl);
+       }
        if (is_merge_conflict){
            System.out.println("Encountered a merge conflict.");
        }
     }
 
-    //Does not handle commit of file
-    // Constructs the merge conflict content, write to file, and then stage the file
-    private static boolean merge_conflict(String filename, String current_file_content, String branch_file_content){
-        String merge_conflict_contents = "<<<<<<< HEAD\n" + current_file_content + "=======\n" + branch_file_content + ">>>>>>>\n";
-        File file = join(CWD, filename);
-        writeContents(file, merge_conflict_contents);
-        add(filename);
-        return true;
+    /** Writes to FILE the merge of the versions of a file that FILE_VERSIONS found changed in different ways
+     *  in the current and given branches, and returns true if the file is left in conflict.
+     *  A file changed in both is merged line by line (see LineMerge), so only the lines changed in both are in
+     *  conflict; the file is whole in conflict if it was deleted in one branch, or absent at the split point. */
+    private static boolean merge_file(TreeDiff.Merge file_versions, File file){
+        byte[] ours = file_versions.ours != null ? ObjectStore.read_contents(file_versions.ours.content_compare) : new byte[0];
+        byte[] theirs = file_versions.theirs != null ? ObjectStore.read_contents(file_versions.theirs.content_compare) : new byte[0];
+        file.getParentFile().mkdirs();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))){
+            if (file_versions.base != null && file_versions.ours != null && file_versions.theirs != null){
+                byte[] base = ObjectStore.read_contents(file_versions.base.content_compare);
+                return LineMerge.merge(base, ours, theirs, out) > 0;
+            }
+            LineMerge.conflict(ours, theirs, out);
+            return true;
+        } catch (IOException e){
+            throw new IllegalArgumentException(e.getMessage());
+        }
     }
 
     /** Returns the COMMIT_ID of split point of current branch and given branch.
-     *  Uses level order search concept. */
+     *  The search is done by MergeBase over the Commit Graph. */
     private static String find_split_point(String branchname){
+        CommitGraph graph = CommitGraph.load();
+        int current_branch_HEAD = graph.recent_index_of(readContentsAsString(HEAD));
+        int target_branch_HEAD = graph.recent_index_of(readContentsAsString(join(GITLET_DIR, branchname)));
 
-        String current_branch_HEAD = readContentsAsString(HEAD);
-        String target_branch_HEAD = readContentsAsString(join(GITLET_DIR, branchname));
-
-        // Keeps track of neighbours added during iteration of commits from current branch and given branch respectively
-        Queue<String> current_fringe = new LinkedList<>();
-        Queue<String> branch_fringe = new LinkedList<>();
-
-        // Keeps track of nodes/ commits that have been visited
-        HashSet<String> marked_current = new HashSet<>();
-        HashSet<String> marked_branch = new HashSet<>();
-
-        // Initially, add starting points to both marked sets and the queue tracking iteration of nodes
-        current_fringe.add(current_branch_HEAD);
-        branch_fringe.add(target_branch_HEAD);
-        marked_current.add(current_branch_HEAD);
-        marked_branch.add(target_branch_HEAD);
-
-        while (!current_fringe.isEmpty() || !branch_fringe.isEmpty()){
-            if (!current_fringe.isEmpty()) {
-                String current_commit_ID = current_fringe.remove();
-                Commit current_commit = readObject(join(Commits, current_commit_ID), Commit.class);
-                String current_neighbour = current_commit.Default_parent_commitID;
-                // Condition to prevent case of initial commit with null parents reached first
-                if (current_neighbour != null) {
-                    marked_current.add(current_neighbour);
-                    current_fringe.add(current_neighbour);
-                }
-                if (current_commit.Secondary_parent_commitID != null) {
-                    String second_neighbour = current_commit.Secondary_parent_commitID;
-                    marked_current.add(second_neighbour);
-                    current_fringe.add(second_neighbour);
-                }
-                if (marked_branch.contains(current_commit_ID)){
-                    return current_commit_ID;
-                }
-            }
-
-            if (!branch_fringe.isEmpty()) {
-                String branch_commit_ID = branch_fringe.remove();
-                Commit branch_commit = readObject(join(Commits, branch_commit_ID), Commit.class);
-                String branch_neighbour = branch_commit.Default_parent_commitID;
-                if (branch_neighbour != null) {
-                    marked_branch.add(branch_neighbour);
-                    branch_fringe.add(branch_neighbour);
-                }
-                if (branch_commit.Secondary_parent_commitID != null) {
-                    String second_neighbour_branch = branch_commit.Secondary_parent_commitID;
-                    marked_branch.add(second_neighbour_branch);
-                    branch_fringe.add(second_neighbour_branch);
-                }
-                if (marked_current.contains(branch_commit_ID)){
-                    return branch_commit_ID;
-                }
-            }
-        }
-        return null;
+        int split_point = MergeBase.find(graph, current_branch_HEAD, target_branch_HEAD);
+        return split_point == CommitGraph.NONE ? null : graph.ids[split_point];
     }
 }
@@ -1,39 +1,182 @@
 package gitlet;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import static gitlet.Repository.CWD;
+import static gitlet.Repository.StagingArea_file;
 import static gitlet.Utils.*;
 
 
 public class StagingArea implements Serializable {
 
+    /** Fixed so that Staging Areas written by older versions of Gitlet can still be read. */
+    private static final long serialVersionUID = -2184884687240298231L;
+
     /** A Staging Area object contains of 2 parts: Add and Remove, that holds the files
      *  ready for addition or removal respectively. */
     public TreeMap<String, Blob> Add;
     public TreeSet<String> Remove;
 
+    /** Journal record that stages a file for addition: [STAGE][path][content hash][varint size]. */
+    private static final byte STAGE = 'a';
+
+    /** Journal record that unstages a file from both Add and Remove: [UNSTAGE][path]. */
+    private static final byte UNSTAGE = 'u';
+
+    /** Changes made by add_to_stage since the Staging Area was loaded, as journal records not yet written. */
+    private transient Format.Writer journal = new Format.Writer();
+
+    /** Number of journal records in the StagingArea file when it was loaded. */
+    private transient int journal_length;
+
+    /** True if the StagingArea file cannot take a journal, because an older version of Gitlet wrote it. */
+    private transient boolean must_rewrite;
+
     public StagingArea() {
         this.Add = new TreeMap<>();
         this.Remove = new TreeSet<>();
     }
 
+    /** Reads the Staging Area from the StagingArea file. */
+    public static StagingArea load() {
+        byte[] bytes = readContents(StagingArea_file);
+        if (Format.is_serialized(bytes)) {
+            StagingArea SA = readObject(StagingArea_file, StagingArea.class);
+            SA.journal = new Format.Writer();
+            SA.must_rewrite = true;
+            return SA;
+        }
+        return decode(bytes);
+    }
+
+    /** Writes the whole Staging Area to the StagingArea file, replacing its journal. */
+    public void save() {
+        for (Blob blob : Add.values()) {
+            // Blobs staged by older versions of Gitlet carry their contents, which must reach the Object Store first
+            ObjectStore.put_blob(blob);
+        }
+        writeContents(StagingArea_file, encode());
+        journal.reset();
+        journal.records = 0;
+        journal_length = 0;
+        must_rewrite = false;
+    }
+
+    /** Writes the changes made by add_to_stage since the Staging Area was loaded, by appending them to the journal
+     *  at the end of the StagingArea file instead of rewriting it, so that staging one file costs the same however
+     *  many files are staged already. Once the journal has grown longer than the Staging Area itself, the whole
+     *  Staging Area is written instead, which empties the journal. */
+    public void append() {
+        if (journal.records == 0) {
+            return;
+        }
+        int records = journal_length + journal.records;
+        if (must_rewrite || records > Math.max(MIN_JOURNAL_LENGTH, Add.size() + Remove.size())) {
+            save();
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(StagingArea_file, true)) {
+            journal.writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        journal_length = records;
+        journal.reset();
+        journal.records = 0;
+    }
+
+    /** The journal may always hold this many records before the Staging Area is rewritten. */
+    private static final int MIN_JOURNAL_LENGTH = 64;
+
+    /** Returns the Staging Area encoded as
+     *  [varint count][path][content hash][varint size] per file staged for addition,
+     *  then [varint count][path] per file staged for removal (see Format).
+     *  The StagingArea file holds these bytes followed by the journal records written by append. */
+    public byte[] encode() {
+        Format.Writer out = new Format.Writer(Format.STAGING_AREA);
+        out.table(Add.size());
+        for (Map.Entry<String, Blob> name_blob : Add.entrySet()) {
+            out.path(name_blob.getKey());
+            out.id(name_blob.getValue().content_compare);
+            out.varlong(name_blob.getValue().header().size);
+        }
+        out.table(Remove.size());
+        for (String name : Remove) {
+            out.path(name);
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the Staging Area encoded in BYTES by encode. */
+    public static StagingArea decode(byte[] bytes) {
+        Format.Reader in = new Format.Reader(bytes, Format.STAGING_AREA);
+        StagingArea SA = new StagingArea();
+        int count = in.table();
+        ArrayList<String> names = new ArrayList<>(count);
+        ArrayList<Blob> blobs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = in.path();
+            names.add(name);
+            blobs.add(new Blob(name, new Blob.Header(in.id(), in.varlong())));
+        }
+        SA.Add = Format.sorted_map(names, blobs);
+        for (int i = in.table(); i > 0; i--) {
+            SA.Remove.add(in.path());
+        }
+        while (in.remaining() > 0) {
+            try {
+                byte record = in.read_byte();
+                String name = in.string();
+                SA.Remove.remove(name);
+                if (record == STAGE) {
+                    SA.Add.put(name, new Blob(name, new Blob.Header(in.id(), in.varlong())));
+                } else {
+                    SA.Add.remove(name);
+                }
+            } catch (IllegalArgumentException e) {
+                // A record cut short by a crash while appending was never fully staged, so it is left out
+                break;
+            }
+            SA.journal_length += 1;
+        }
+        return SA;
+    }
+
     /** Manages Add and Remove containers in Staging Area.
      *  Removes file from Remove container (if applicable) since add reverts the effects of removal.
      *  If 'remove_if_present' equals true, removes file from Add container (if applicable) and returns.
-     *  Else, creates a new blob object and adds (filename, blob) entry to Add container. */
-    public void add_to_stage(String file_name, boolean remove_if_present) {
-        if (Remove.contains(file_name)) {
-            Remove.remove(file_name);
-        }
+     *  Else, creates a new blob object and adds (filename, blob) entry to Add container.
+     *  CONTENT_HASH is the hash of the file's current contents; if a blob with those contents is already stored,
+     *  the file is not read again. Changes are recorded in the journal, to be written by append. */
+    public void add_to_stage(String file_name, boolean remove_if_present, String content_hash) {
+        boolean changed = Remove.remove(file_name);
         if (remove_if_present) {
-            if (Add.containsKey(file_name)) {
-                Add.remove(file_name);
+            changed |= Add.remove(file_name) != null;
+            if (changed) {
+                journal.write(UNSTAGE);
+                journal.string(file_name);
+                journal.records += 1;
             }
         } else {
-            Blob blob = new Blob(join(CWD, file_name), file_name);
+            File file = join(CWD, file_name);
+            Blob blob;
+            if (content_hash != null && ObjectStore.has_blob(content_hash)) {
+                blob = new Blob(file_name, new Blob.Header(content_hash, file.length()));
+            } else {
+                blob = new Blob(file, file_name);
+            }
             Add.put(file_name, blob);
+            journal.write(STAGE);
+            journal.string(file_name);
+            journal.id(blob.content_compare);
+            journal.varlong(blob.size);
+            journal.records += 1;
         }
     }
 
@@ -51,9 +194,7 @@ public class StagingArea implements Serializable {
             }
             if (file_in_current_commit) {
                 Remove.add(filename);
-                if (join(CWD, filename).exists()) {
-                    restrictedDelete(join(CWD, filename));
-                }
+                Repository.delete_working_file(filename);
             }
             return true;
         }
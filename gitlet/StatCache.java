@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The Stat Cache remembers, for each file in the working directory that Gitlet has hashed,
+ *  its size, last modified time and SHA1 hash of its contents, similar to git's index.
+ *  When the size and modified time of a file are unchanged, its hash is taken from the cache
+ *  instead of reading and rehashing the whole file.
+ *
+ *  Each entry may also remember the ID of a blob known to hold the same contents,
+ *  so that a file can be compared with its committed version without reading the blob.
+ *
+ *  Racy timestamps: a file changed again within the timestamp granularity of the file system
+ *  after it was hashed keeps the same modified time. Entries whose modified time is this close to
+ *  the time the cache was last saved are therefore never trusted, and the file is rehashed.
+ *  Since a later save moves that time on, such entries are smudged when they are saved, as git does:
+ *  their modified time is written as SMUDGED, which no file has, so they stay untrusted until the
+ *  file is hashed again.
+ *
+ *  On disk: [long saved at][int count] then per entry [UTF name][long size][long modified][UTF hash][UTF blob ID or ""] */
+public class StatCache {
+
+    /** Modified times within this many milliseconds of the last save are treated as racy. */
+    private static final long RACY_WINDOW = 1000;
+
+    /** Modified time written for racy entries, which never matches that of a file. */
+    private static final long SMUDGED = -1;
+
+    private static class Entry {
+        long size;
+        long modified;
+        String hash;
+        String blobID;
+    }
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+
+    /** Time at which the cache was last saved, used to detect racy entries. */
+    private long saved_at;
+
+    /** True if entries were added or changed since the cache was loaded. */
+    private boolean changed;
+
+    /** Number of files whose hash was taken from the cache, and number that had to be read and hashed. */
+    public int reused;
+    public int rehashed;
+
+    /** Reads the Stat Cache file, or returns an empty cache if there is none yet. */
+    public static StatCache load() {
+        StatCache cache = new StatCache();
+        if (!StatCache_file.exists()) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(StatCache_file)))) {
+            cache.saved_at = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                Entry entry = new Entry();
+                entry.size = in.readLong();
+                entry.modified = in.readLong();
+                entry.hash = in.readUTF();
+                entry.blobID = in.readUTF();
+                if (entry.blobID.isEmpty()) {
+                    entry.blobID = null;
+                }
+                cache.entries.put(name, entry);
+            }
+        } catch (IOException e) {
+            // A damaged cache only costs rehashing, so start over with an empty one.
+            cache.entries.clear();
+            cache.changed = true;
+        }
+        return cache;
+    }
+
+    /** Writes the cache back to the Stat Cache file if anything changed. */
+    public void save() {
+        if (!changed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(StatCache_file)))) {
+            out.writeLong(now);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> name_entry : entries.entrySet()) {
+                Entry entry = name_entry.getValue();
+                if (entry.modified >= now - RACY_WINDOW) {
+                    // Racy now, and it would seem trusted once this save is old
+                    entry.modified = SMUDGED;
+                }
+                out.writeUTF(name_entry.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeUTF(entry.hash);
+                out.writeUTF(entry.blobID == null ? "" : entry.blobID);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        changed = false;
+    }
+
+    /** Returns the SHA1 hash of the contents of the given file in the CWD,
+     *  reading and hashing the file only if its entry is missing, stale or racy. */
+    public String hash(String filename) {
+        String hash = cached_hash(filename);
+        if (hash != null) {
+            return hash;
+        }
+        rehashed += 1;
+        hash = sha1Contents(join(CWD, filename));
+        record(filename, hash, null);
+        return hash;
+    }
+
+    /** Returns the SHA1 hash of the contents of the given file in the CWD if the cache can be trusted for it,
+     *  or null if the file must be read and hashed. After hashing it, call record. */
+    public String cached_hash(String filename) {
+        File file = join(CWD, filename);
+        Entry entry = entries.get(filename);
+        if (entry != null && entry.size == file.length() && entry.modified == file.lastModified()
+                && entry.modified < saved_at - RACY_WINDOW) {
+            reused += 1;
+            return entry.hash;
+        }
+        return null;
+    }
+
+    /** Returns true if the given file in the CWD is known to hold the same contents as the blob with BLOBID.
+     *  Only valid after hash(filename) has been called for the file. */
+    public boolean matches(String filename, String blobID) {
+        Entry entry = entries.get(filename);
+        return entry != null && blobID.equals(entry.blobID);
+    }
+
+    /** Records that the given file in the CWD, as it is now, has contents with the given HASH,
+     *  which are also held by the blob with BLOBID (or null if not known). */
+    public void record(String filename, String hash, String blobID) {
+        File file = join(CWD, filename);
+        Entry old = entries.get(filename);
+        if (blobID == null && old != null && hash.equals(old.hash)) {
+            // The contents are unchanged, so the blob known to hold them still does
+            blobID = old.blobID;
+        }
+        Entry entry = new Entry();
+        entry.size = file.length();
+        entry.modified = file.lastModified();
+        entry.hash = hash;
+        entry.blobID = blobID;
+        entries.put(filename, entry);
+        changed = true;
+    }
+
+    /** Forgets the given file, for example after it is deleted from the CWD. */
+    public void forget(String filename) {
+        if (entries.remove(filename) != null) {
+            changed = true;
+        }
+    }
+
+    /** Prints how many files were hashed and how many were answered from the cache. */
+    public void report() {
+        stats("stat cache: %d rehashed, %d reused", rehashed, reused);
+    }
+}
@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static gitlet.Utils.sha1;
+
+/** A Tree is one directory of a commit: the files directly in it, with the hash and size of their contents,
+ *  and the trees of its subdirectories, by tree ID. A commit points to the tree of the working directory,
+ *  its root tree.
+ *
+ *  Trees are stored in the Object Store, named by the SHA1 hash of their encoding, so a tree ID stands for
+ *  the whole contents of its directory: commits that leave a directory unchanged share its tree, and a new
+ *  commit only writes the trees of the directories it changes, and of the directories above them.
+ *  Likewise, two trees with the same ID hold the same files, which lets their contents be skipped. */
+class Tree {
+
+    /** The files directly in this directory, by name. */
+    final TreeMap<String, Blob.Header> files;
+
+    /** The tree IDs of the subdirectories of this directory, by name. */
+    final TreeMap<String, String> trees;
+
+    Tree() {
+        this.files = new TreeMap<>();
+        this.trees = new TreeMap<>();
+    }
+
+    private Tree(TreeMap<String, Blob.Header> files, TreeMap<String, String> trees) {
+        this.files = files;
+        this.trees = trees;
+    }
+
+    boolean isEmpty() {
+        return files.isEmpty() && trees.isEmpty();
+    }
+
+    /** Returns this tree encoded as a table of files sorted by name, each [name][blob ID][varint size],
+     *  then a table of subdirectories sorted by name, each [name][tree ID] (see Format). */
+    byte[] encode() {
+        Format.Writer out = new Format.Writer(Format.TREE);
+        out.table(files.size());
+        for (Map.Entry<String, Blob.Header> name_header : files.entrySet()) {
+            out.path(name_header.getKey());
+            out.id(name_header.getValue().content_compare);
+            out.varlong(name_header.getValue().size);
+        }
+        out.table(trees.size());
+        for (Map.Entry<String, String> name_treeID : trees.entrySet()) {
+            out.path(name_treeID.getKey());
+            out.id(name_treeID.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the tree encoded in BYTES by encode. */
+    static Tree decode(byte[] bytes) {
+        Format.Reader in = new Format.Reader(bytes, Format.TREE);
+        int count = in.table();
+        ArrayList<String> names = new ArrayList<>(count);
+        ArrayList<Blob.Header> headers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.path());
+            headers.add(new Blob.Header(in.id(), in.varlong()));
+        }
+        TreeMap<String, Blob.Header> files = Format.sorted_map(names, headers);
+        count = in.table();
+        names = new ArrayList<>(count);
+        ArrayList<String> treeIDs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.path());
+            treeIDs.add(in.id());
+        }
+        return new Tree(files, Format.sorted_map(names, treeIDs));
+    }
+
+    /** Stores the trees of all directories holding the files in FILES, a map from path to the hash and size of
+     *  the file's contents, and returns the ID of the root tree. */
+    static String write(SortedMap<String, Blob.Header> files) {
+        return update(null, files, Collections.emptySet());
+    }
+
+    /** Stores the trees of the root tree ROOTID changed by putting the files in ADDED, by path, and removing
+     *  the files in REMOVED, and returns the ID of the new root tree. Only the trees of directories holding
+     *  a changed file are read and written again; the others are shared with ROOTID.
+     *  Directories left without files are removed. ROOTID may be null for an empty root tree. */
+    static String update(String rootID, Map<String, Blob.Header> added, Set<String> removed) {
+        String treeID = update_directory(rootID, added, removed, ObjectStore::put_tree);
+        return treeID != null ? treeID : ObjectStore.put_tree(new Tree());
+    }
+
+    /** Builds the trees of all directories holding the files in FILES, as write does, but puts them in TREES by
+     *  tree ID instead of storing them, and returns the ID of the root tree, or null if FILES is empty.
+     *  Used for trees that are only compared, such as that of the working directory (see TreeDiff). */
+    static String build(SortedMap<String, Blob.Header> files, Map<String, Tree> trees) {
+        return build(null, files, Collections.emptySet(), trees);
+    }
+
+    /** Builds the trees of the root tree ROOTID changed as update does, but puts the trees written in TREES by tree ID
+     *  instead of storing them, and returns the ID of the new root tree, or null if it is empty. */
+    static String build(String rootID, Map<String, Blob.Header> added, Set<String> removed, Map<String, Tree> trees) {
+        return update_directory(rootID, added, removed, tree -> {
+            String treeID = sha1(tree.encode());
+            trees.put(treeID, tree);
+            return treeID;
+        });
+    }
+
+    /** As update, but returns null instead of storing an empty tree, and stores trees with STORE. */
+    private static String update_directory(String treeID, Map<String, Blob.Header> added, Set<String> removed,
+                                           Function<Tree, String> store) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return treeID;
+        }
+        Tree tree = treeID == null ? new Tree() : ObjectStore.get_tree(treeID);
+
+        // Changes to files directly in this directory are made here; the others are passed on by subdirectory
+        TreeMap<String, Map<String, Blob.Header>> added_below = new TreeMap<>();
+        TreeMap<String, Set<String>> removed_below = new TreeMap<>();
+        for (Map.Entry<String, Blob.Header> path_header : added.entrySet()) {
+            String path = path_header.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                tree.files.put(path, path_header.getValue());
+            } else {
+                added_below.computeIfAbsent(path.substring(0, slash), name -> new TreeMap<>())
+                        .put(path.substring(slash + 1), path_header.getValue());
+            }
+        }
+        for (String path : removed) {
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                tree.files.remove(path);
+            } else {
+                removed_below.computeIfAbsent(path.substring(0, slash), name -> new TreeSet<>())
+                        .add(path.substring(slash + 1));
+            }
+        }
+        TreeSet<String> changed = new TreeSet<>(added_below.keySet());
+        changed.addAll(removed_below.keySet());
+        for (String name : changed) {
+            String subtreeID = update_directory(tree.trees.get(name),
+                    added_below.getOrDefault(name, Collections.emptyMap()),
+                    removed_below.getOrDefault(name, Collections.emptySet()), store);
+            if (subtreeID == null) {
+                tree.trees.remove(name);
+            } else {
+                tree.trees.put(name, subtreeID);
+            }
+        }
+        return tree.isEmpty() ? null : store.apply(tree);
+    }
+
+    /** Returns the hash of the contents of the file at PATH under the tree TREEID, or the tree ID of the directory
+     *  at PATH, or null if there is neither. Only the trees of the directories above PATH are read. */
+    static String entry(String treeID, String path) {
+        String[] names = path.split("/");
+        for (int i = 0; i < names.length - 1 && treeID != null; i++) {
+            treeID = ObjectStore.get_tree(treeID).trees.get(names[i]);
+        }
+        if (treeID == null) {
+            return null;
+        }
+        Tree tree = ObjectStore.get_tree(treeID);
+        Blob.Header file = tree.files.get(names[names.length - 1]);
+        return file != null ? file.content_compare : tree.trees.get(names[names.length - 1]);
+    }
+
+    /** Adds every file under the tree TREEID to FILES, by path, with its blob ID, and to HEADERS with the hash and
+     *  size of its contents. PREFIX is the path of the tree's directory, followed by '/', or "" for the root. */
+    static void flatten(String treeID, String prefix, Map<String, String> files, Map<String, Blob.Header> headers) {
+        Tree tree = ObjectStore.get_tree(treeID);
+        for (Map.Entry<String, Blob.Header> name_header : tree.files.entrySet()) {
+            String path = prefix + name_header.getKey();
+            files.put(path, name_header.getValue().content_compare);
+            headers.put(path, name_header.getValue());
+        }
+        for (Map.Entry<String, String> name_treeID : tree.trees.entrySet()) {
+            flatten(name_treeID.getValue(), prefix + name_treeID.getKey() + "/", files, headers);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package gitlet;
+
+import java.util.*;
+
+/** Finds the files that differ between two or three Trees.
+ *
+ *  The trees are walked directory by directory, with the entries of each directory, which are kept sorted
+ *  by name, compared in lockstep. Since a tree ID is the hash of everything under it, a subdirectory whose
+ *  tree ID is the same on the sides that matter is skipped without reading it, so the cost of a diff grows with
+ *  the number of directories that changed rather than with the number of files.
+ *
+ *  Trees are read from the Object Store, except those in the map given to the constructor, which lets trees
+ *  built in memory, such as that of the working directory (see Tree.build), be compared without storing them.
+ *  A null tree ID stands for an empty directory. */
+class TreeDiff {
+
+    /** A file that differs between two trees, with its hash and size before and after; null where it is absent. */
+    static class Change {
+        final String path;
+        final Blob.Header before;
+        final Blob.Header after;
+
+        Change(String path, Blob.Header before, Blob.Header after) {
+            this.path = path;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    /** A file that a three way merge must look at, with its hash and size in the base tree, in our tree and in
+     *  their tree; null where it is absent. */
+    static class Merge {
+        final String path;
+        final Blob.Header base;
+        final Blob.Header ours;
+        final Blob.Header theirs;
+
+        Merge(String path, Blob.Header base, Blob.Header ours, Blob.Header theirs) {
+            this.path = path;
+            this.base = base;
+            this.ours = ours;
+            this.theirs = theirs;
+        }
+    }
+
+    /** Trees that are not in the Object Store, by tree ID. */
+    private final Map<String, Tree> in_memory;
+
+    /** Number of trees read, and number of subdirectories skipped because their trees matched. */
+    int trees_read;
+    int trees_skipped;
+
+    TreeDiff() {
+        this(Collections.emptyMap());
+    }
+
+    TreeDiff(Map<String, Tree> in_memory) {
+        this.in_memory = in_memory;
+    }
+
+    /** Returns the files added, removed or changed from the tree BEFOREID to the tree AFTERID. */
+    List<Change> diff(String beforeID, String afterID) {
+        ArrayList<Change> changes = new ArrayList<>();
+        diff(beforeID, afterID, "", changes);
+        return changes;
+    }
+
+    private void diff(String beforeID, String afterID, String prefix, List<Change> changes) {
+        if (Objects.equals(beforeID, afterID)) {
+            trees_skipped += 1;
+            return;
+        }
+        Tree before = tree(beforeID);
+        Tree after = tree(afterID);
+        for (String name : union(before.files, after.files)) {
+            Blob.Header before_file = before.files.get(name);
+            Blob.Header after_file = after.files.get(name);
+            if (!same(before_file, after_file)) {
+                changes.add(new Change(prefix + name, before_file, after_file));
+            }
+        }
+        for (String name : union(before.trees, after.trees)) {
+            diff(before.trees.get(name), after.trees.get(name), prefix + name + "/", changes);
+        }
+    }
+
+    /** Returns the files that a merge of the tree THEIRSID into the tree OURSID, whose common ancestor has the tree
+     *  BASEID, must change or report as conflicts. These are the files that differ between our tree and theirs,
+     *  except those that they left as they were in the base; every other file stays as it is in our tree.
+     *  A directory is skipped if it is the same in both trees, or if they did not change it. */
+    List<Merge> diff3(String baseID, String oursID, String theirsID) {
+        ArrayList<Merge> merges = new ArrayList<>();
+        diff3(baseID, oursID, theirsID, "", merges);
+        return merges;
+    }
+
+    private void diff3(String baseID, String oursID, String theirsID, String prefix, List<Merge> merges) {
+        if (Objects.equals(oursID, theirsID) || Objects.equals(baseID, theirsID)) {
+            trees_skipped += 1;
+            return;
+        }
+        Tree base = tree(baseID);
+        Tree ours = tree(oursID);
+        Tree theirs = tree(theirsID);
+        for (String name : union(base.files, ours.files, theirs.files)) {
+            Blob.Header base_file = base.files.get(name);
+            Blob.Header our_file = ours.files.get(name);
+            Blob.Header their_file = theirs.files.get(name);
+            if (!same(our_file, their_file) && !same(base_file, their_file)) {
+                merges.add(new Merge(prefix + name, base_file, our_file, their_file));
+            }
+        }
+        for (String name : union(base.trees, ours.trees, theirs.trees)) {
+            diff3(base.trees.get(name), ours.trees.get(name), theirs.trees.get(name), prefix + name + "/", merges);
+        }
+    }
+
+    /** Returns true if A and B are both absent, or both present with the same contents. */
+    static boolean same(Blob.Header a, Blob.Header b) {
+        return a == null ? b == null : b != null && a.content_compare.equals(b.content_compare);
+    }
+
+    private Tree tree(String treeID) {
+        if (treeID == null) {
+            return EMPTY;
+        }
+        Tree tree = in_memory.get(treeID);
+        if (tree == null) {
+            tree = ObjectStore.get_tree(treeID);
+            trees_read += 1;
+        }
+        return tree;
+    }
+
+    private static final Tree EMPTY = new Tree();
+
+    /** Returns every key of the sorted MAPS once, in order, by walking their keys in lockstep. */
+    @SafeVarargs
+    private static List<String> union(SortedMap<String, ?>... maps) {
+        ArrayList<Iterator<String>> keys = new ArrayList<>(maps.length);
+        String[] next = new String[maps.length];
+        for (int i = 0; i < maps.length; i++) {
+            keys.add(maps[i].keySet().iterator());
+            next[i] = keys.get(i).hasNext() ? keys.get(i).next() : null;
+        }
+        ArrayList<String> names = new ArrayList<>();
+        while (true) {
+            String least = null;
+            for (String name : next) {
+                if (name != null && (least == null || name.compareTo(least) < 0)) {
+                    least = name;
+                }
+            }
+            if (least == null) {
+                return names;
+            }
+            names.add(least);
+            for (int i = 0; i < maps.length; i++) {
+                if (least.equals(next[i])) {
+                    next[i] = keys.get(i).hasNext() ? keys.get(i).next() : null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Writes the changes between two versions of files in the unified diff format, as git diff does, for the diff
+ *  command.
+ *
+ *  Each file's versions are compared line by line with LineDiff, and the changed lines are written in hunks with
+ *  CONTEXT unchanged lines around them, straight from the bytes of the versions to the output stream. Files that
+ *  hold a zero byte in their first BINARY_CHECK bytes are taken to be binary, and files larger than MAX_TEXT_SIZE
+ *  are reported as binary from their size alone, without being read. */
+class UnifiedDiff {
+
+    /** Number of unchanged lines shown before and after each change. */
+    static final int CONTEXT = 3;
+
+    /** Files larger than this are not compared line by line. */
+    static final long MAX_TEXT_SIZE = Pack.MAX_PACKED_OBJECT;
+
+    /** Number of bytes at the start of a file looked at to tell whether it is binary. */
+    static final int BINARY_CHECK = 8000;
+
+    private final OutputStream out;
+
+    UnifiedDiff(OutputStream out) {
+        this.out = out;
+    }
+
+    /** Writes the changes to the file PATH from the version BEFORE to the version AFTER, each given by the hash and
+     *  size of its contents, or null where the file is absent. The contents of BEFORE are read from the Object
+     *  Store; those of AFTER are read from AFTER_FILE if it is not null, and from the Object Store otherwise. */
+    void write(String path, Blob.Header before, Blob.Header after, File after_file) throws IOException {
+        line("diff --git a/" + path + " b/" + path);
+        if (before == null) {
+            line("new file");
+        } else if (after == null) {
+            line("deleted file");
+        }
+        long before_size = before != null ? before.size : 0;
+        long after_size = after != null ? after.size : 0;
+        byte[] before_bytes = before_size > MAX_TEXT_SIZE ? null
+                : before != null ? read_text(ObjectStore.open(before.content_compare)) : new byte[0];
+        byte[] after_bytes = before_bytes == null || after_size > MAX_TEXT_SIZE ? null
+                : after == null ? new byte[0]
+                : read_text(after_file != null ? new FileInputStream(after_file) : ObjectStore.open(after.content_compare));
+        if (before_bytes == null || after_bytes == null) {
+            line("Binary files " + (before != null ? "a/" + path : "/dev/null") + " and "
+                    + (after != null ? "b/" + path : "/dev/null") + " differ");
+            return;
+        }
+        line("--- " + (before != null ? "a/" + path : "/dev/null"));
+        line("+++ " + (after != null ? "b/" + path : "/dev/null"));
+        LineDiff.Lines[] lines = LineDiff.split(before_bytes, after_bytes);
+        hunks(lines[0], lines[1], LineDiff.matches(lines[0], lines[1]));
+    }
+
+    /** Returns the whole contents of IN, or null if they are binary, in which case only their start is read. */
+    private static byte[] read_text(InputStream in) throws IOException {
+        try (in) {
+            byte[] start = in.readNBytes(BINARY_CHECK);
+            for (byte b : start) {
+                if (b == 0) {
+                    return null;
+                }
+            }
+            byte[] rest = in.readAllBytes();
+            if (rest.length == 0) {
+                return start;
+            }
+            byte[] contents = new byte[start.length + rest.length];
+            System.arraycopy(start, 0, contents, 0, start.length);
+            System.arraycopy(rest, 0, contents, start.length, rest.length);
+            return contents;
+        }
+    }
+
+    /** Writes the hunks of changes from A to B, whose common lines are the BLOCKS of matches. Changes less than
+     *  two CONTEXTs apart are written in the same hunk, so that no line is shown twice. */
+    private void hunks(LineDiff.Lines a, LineDiff.Lines b, List<LineDiff.Block> blocks) throws IOException {
+        // Each change is the lines of A from [0] to [1] replaced by the lines of B from [2] to [3]
+        ArrayList<int[]> changes = new ArrayList<>();
+        int a_next = 0;
+        int b_next = 0;
+        for (int i = 0; i <= blocks.size(); i++) {
+            int a_start = i < blocks.size() ? blocks.get(i).a : a.size();
+            int b_start = i < blocks.size() ? blocks.get(i).b : b.size();
+            if (a_next < a_start || b_next < b_start) {
+                changes.add(new int[] {a_next, a_start, b_next, b_start});
+            }
+            if (i < blocks.size()) {
+                a_next = a_start + blocks.get(i).length;
+                b_next = b_start + blocks.get(i).length;
+            }
+        }
+        int first = 0;
+        while (first < changes.size()) {
+            int last = first;
+            while (last + 1 < changes.size() && changes.get(last + 1)[0] - changes.get(last)[1] <= 2 * CONTEXT) {
+                last += 1;
+            }
+            hunk(a, b, changes.subList(first, last + 1));
+            first = last + 1;
+        }
+    }
+
+    /** Writes one hunk holding CHANGES, with their context. */
+    private void hunk(LineDiff.Lines a, LineDiff.Lines b, List<int[]> changes) throws IOException {
+        int[] first = changes.get(0);
+        int[] last = changes.get(changes.size() - 1);
+        int a_from = Math.max(0, first[0] - CONTEXT);
+        int b_from = first[2] - (first[0] - a_from);
+        int a_to = Math.min(a.size(), last[1] + CONTEXT);
+        int b_to = last[3] + (a_to - last[1]);
+        line("@@ -" + range(a_from, a_to - a_from) + " +" + range(b_from, b_to - b_from) + " @@");
+        int a_next = a_from;
+        for (int[] change : changes) {
+            lines(' ', a, a_next, change[0]);
+            lines('-', a, change[0], change[1]);
+            lines('+', b, change[2], change[3]);
+            a_next = change[1];
+        }
+        lines(' ', a, a_next, a_to);
+    }
+
+    /** Returns the range of COUNT lines from line START, counting from 0, as a hunk header shows it. */
+    private static String range(int start, int count) {
+        if (count == 0) {
+            return start + ",0";
+        }
+        return count == 1 ? String.valueOf(start + 1) : (start + 1) + "," + count;
+    }
+
+    /** Writes the lines FROM to TO of LINES, each after PREFIX. */
+    private void lines(char prefix, LineDiff.Lines lines, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            out.write(prefix);
+            lines.write(out, i, i + 1);
+            if (lines.bytes[lines.starts[i + 1] - 1] != '\n') {
+                out.write('\n');
+                line("\\ No newline at end of file");
+            }
+        }
+    }
+
+    private void line(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+    }
+}